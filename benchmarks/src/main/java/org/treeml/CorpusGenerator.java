@@ -0,0 +1,359 @@
+package org.treeml;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates valid TreeML documents of any size, together with a schema they validate against.
+ * <p>
+ * A document is a sequence of top-level "record" nodes. Every level of a record has fanOut value fields,
+ * v[level]_[index], and, above the deepest level, fanOut repetitions of a group node g[level+1]
+ * holding the next level. The type of each field is picked once from the value-type mix, so every
+ * record has the same shape and the schema stays small; the values themselves are random.
+ * <p>
+ * Usage: CorpusGenerator output.tree [size=1m] [depth=3] [fanOut=4] [listLength=8] [syntax=tab|curly]
+ * [seed=1] [mix=token:1,string:1,integer:1,decimal:1,boolean:1,dateTime:1,duration:1,list:1]
+ */
+@SuppressWarnings("WeakerAccess")
+public class CorpusGenerator {
+
+    public enum ValueType {
+        token, string, integer, decimal, bool, dateTime, duration, list;
+
+        String schemaName() {
+            return this == bool ? "boolean" : name();
+        }
+    }
+
+    private static final String[] WORDS = {
+            "address", "line", "street", "city", "zip", "country", "email", "phone", "alpha", "beta",
+            "gamma", "delta", "river", "stone", "cloud", "ember", "frost", "grove", "harbor", "island"
+    };
+    private static final String[] UNICODE = {"café", "naïve", "über", "日本", "škóla"};
+
+    public final int depth;
+    public final int fanOut;
+    public final int listLength;
+    public final boolean curly;
+    public final long seed;
+    private final ValueType[][] shape;
+    private final Random random;
+    private long records;
+    private long nodes;
+
+    public CorpusGenerator(int depth, int fanOut, int listLength, boolean curly, long seed, int[] mix) {
+        if (depth < 1 || fanOut < 1 || listLength < 1) {
+            throw new IllegalArgumentException("depth, fanOut and listLength must be at least 1");
+        }
+        if (mix.length != ValueType.values().length) {
+            throw new IllegalArgumentException("mix needs one weight per value type");
+        }
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.listLength = listLength;
+        this.curly = curly;
+        this.seed = seed;
+        Random shapeRandom = new Random(seed);
+        shape = new ValueType[depth][fanOut];
+        for (int level = 0; level < depth; level++) {
+            for (int i = 0; i < fanOut; i++) {
+                shape[level][i] = pick(mix, shapeRandom);
+            }
+        }
+        random = new Random(seed + 1);
+    }
+
+    public static int[] evenMix() {
+        int[] mix = new int[ValueType.values().length];
+        java.util.Arrays.fill(mix, 1);
+        return mix;
+    }
+
+    /**
+     * Parses a mix such as "integer:4,decimal:2,list:1"; types not named get weight zero.
+     */
+    public static int[] parseMix(String mix) {
+        int[] weights = new int[ValueType.values().length];
+        for (String entry : mix.split(",")) {
+            String[] nv = entry.trim().split(":");
+            String name = "boolean".equals(nv[0]) ? "bool" : nv[0];
+            weights[ValueType.valueOf(name).ordinal()] = nv.length > 1 ? Integer.parseInt(nv[1]) : 1;
+        }
+        return weights;
+    }
+
+    private static ValueType pick(int[] mix, Random random) {
+        int total = 0;
+        for (int weight : mix) {
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("mix must have at least one positive weight");
+        }
+        int r = random.nextInt(total);
+        for (int i = 0; i < mix.length; i++) {
+            r -= mix[i];
+            if (r < 0) {
+                return ValueType.values()[i];
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Writes records until at least targetBytes of UTF-8 have been written, and returns the byte count.
+     */
+    public long write(OutputStream out, long targetBytes) throws IOException {
+        StringBuilder sb = new StringBuilder(1 << 16);
+        sb.append("#treeml:generated\n");
+        sb.append("#treeml:syntax::").append(curly ? "curly" : "tab").append('\n');
+        sb.append("#treeml:shape::").append(depth).append('x').append(fanOut).append('\n');
+        if (curly) {
+            sb.append("{\n");
+        }
+        long written = 0;
+        while (written + sb.length() < targetBytes || records == 0) {
+            record(sb);
+            if (sb.length() > (1 << 15)) {
+                written += flush(sb, out);
+            }
+        }
+        if (curly) {
+            sb.append("}\n");
+        }
+        written += flush(sb, out);
+        out.flush();
+        return written;
+    }
+
+    public String generate(long targetBytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, targetBytes + 4096));
+        try {
+            write(out, targetBytes);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static long flush(StringBuilder sb, OutputStream out) throws IOException {
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        sb.setLength(0);
+        return bytes.length;
+    }
+
+    private void record(StringBuilder sb) {
+        records++;
+        nodes++;
+        String id = "r" + records;
+        if (curly) {
+            sb.append("record : ").append(id).append(" {\n");
+            level(sb, 0);
+            sb.append("}\n");
+        } else {
+            sb.append("record : ").append(id).append('\n');
+            level(sb, 0);
+        }
+    }
+
+    private void level(StringBuilder sb, int level) {
+        int indent = level + 1;
+        for (int i = 0; i < fanOut; i++) {
+            nodes++;
+            indent(sb, indent).append('v').append(level).append('_').append(i).append(" : ");
+            value(sb, shape[level][i]);
+            sb.append('\n');
+        }
+        if (level + 1 < depth) {
+            for (int i = 0; i < fanOut; i++) {
+                nodes++;
+                indent(sb, indent).append('g').append(level + 1).append(curly ? " : {\n" : " :\n");
+                level(sb, level + 1);
+                if (curly) {
+                    indent(sb, indent).append("}\n");
+                }
+            }
+        }
+    }
+
+    private StringBuilder indent(StringBuilder sb, int indent) {
+        for (int i = 0; i < indent; i++) {
+            sb.append(curly ? "    " : "\t");
+        }
+        return sb;
+    }
+
+    private void value(StringBuilder sb, ValueType type) {
+        switch (type) {
+            case token:
+                sb.append("tok_").append(WORDS[random.nextInt(WORDS.length)]);
+                break;
+            case string:
+                sb.append('"');
+                int words = 1 + random.nextInt(6);
+                for (int i = 0; i < words; i++) {
+                    if (i > 0) {
+                        sb.append(' ');
+                    }
+                    int r = random.nextInt(40);
+                    if (r == 0) {
+                        sb.append(UNICODE[random.nextInt(UNICODE.length)]);
+                    } else if (r == 1) {
+                        sb.append("\\\"quoted\\\"");
+                    } else {
+                        sb.append(WORDS[random.nextInt(WORDS.length)]);
+                    }
+                }
+                sb.append('"');
+                break;
+            case integer:
+                sb.append(random.nextInt(2_000_000) - 1_000_000);
+                break;
+            case decimal:
+                sb.append(String.format(Locale.ROOT, "%.4f", random.nextDouble() * 2000 - 1000));
+                break;
+            case bool:
+                sb.append(random.nextBoolean());
+                break;
+            case dateTime:
+                sb.append(String.format(Locale.ROOT, "@20%02d-%02d-%02dT%02d:%02d:00Z",
+                        random.nextInt(30), 1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24), random.nextInt(60)));
+                break;
+            case duration:
+                sb.append("@P").append(1 + random.nextInt(30)).append("DT").append(random.nextInt(24)).append('H');
+                break;
+            case list:
+                for (int i = 0; i < listLength; i++) {
+                    if (i > 0) {
+                        sb.append(", ");
+                    }
+                    sb.append(random.nextInt(100_000));
+                }
+                if (listLength == 1) {
+                    sb.append(',');
+                }
+                break;
+        }
+    }
+
+    /**
+     * The schema every document from this generator validates against.
+     */
+    public String schema() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#treeml:type:schema\n");
+        sb.append("record : tokenid,\n");
+        schemaLevel(sb, 0);
+        return sb.toString();
+    }
+
+    private void schemaLevel(StringBuilder sb, int level) {
+        for (int i = 0; i < fanOut; i++) {
+            tabs(sb, level + 1).append('v').append(level).append('_').append(i)
+                    .append(" : single, ").append(shape[level][i].schemaName()).append('\n');
+        }
+        if (level + 1 < depth) {
+            tabs(sb, level + 1).append('g').append(level + 1).append(" : empty,\n");
+            schemaLevel(sb, level + 1);
+        }
+    }
+
+    private static StringBuilder tabs(StringBuilder sb, int count) {
+        for (int i = 0; i < count; i++) {
+            sb.append('\t');
+        }
+        return sb;
+    }
+
+    /**
+     * Parses sizes such as 512, 64k, 16m or 2g.
+     */
+    public static long parseSize(String size) {
+        String s = size.trim().toLowerCase(Locale.ROOT);
+        long unit = 1;
+        if (s.endsWith("k")) {
+            unit = 1L << 10;
+        } else if (s.endsWith("m")) {
+            unit = 1L << 20;
+        } else if (s.endsWith("g")) {
+            unit = 1L << 30;
+        }
+        if (unit > 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+        return Long.parseLong(s) * unit;
+    }
+
+    public static CorpusGenerator fromArgs(String[] args, int from) {
+        int depth = 3, fanOut = 4, listLength = 8;
+        boolean curly = false;
+        long seed = 1;
+        int[] mix = evenMix();
+        for (int i = from; i < args.length; i++) {
+            String[] nv = args[i].split("=", 2);
+            if (nv.length != 2) {
+                continue;
+            }
+            switch (nv[0]) {
+                case "depth":
+                    depth = Integer.parseInt(nv[1]);
+                    break;
+                case "fanOut":
+                    fanOut = Integer.parseInt(nv[1]);
+                    break;
+                case "listLength":
+                    listLength = Integer.parseInt(nv[1]);
+                    break;
+                case "syntax":
+                    curly = "curly".equals(nv[1]);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(nv[1]);
+                    break;
+                case "mix":
+                    mix = parseMix(nv[1]);
+                    break;
+            }
+        }
+        return new CorpusGenerator(depth, fanOut, listLength, curly, seed, mix);
+    }
+
+    static String arg(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith(name + "=")) {
+                return arg.substring(name.length() + 1);
+            }
+        }
+        return defaultValue;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: output.tree [size=1m] [depth=3] [fanOut=4] [listLength=8] [syntax=tab|curly] [seed=1] [mix=integer:2,string:1,...]");
+            return;
+        }
+        CorpusGenerator generator = fromArgs(args, 1);
+        long size = parseSize(arg(args, "size", "1m"));
+        File output = new File(args[0]);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 1 << 16)) {
+            long bytes = generator.write(out, size);
+            System.out.println("Wrote " + bytes + " bytes, " + generator.getRecords() + " records, " + generator.getNodes() + " nodes to " + output);
+        }
+        File schema = new File(output.getPath() + ".schema");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(schema), StandardCharsets.UTF_8)) {
+            writer.write(generator.schema());
+        }
+        System.out.println("Wrote schema to " + schema);
+    }
+}
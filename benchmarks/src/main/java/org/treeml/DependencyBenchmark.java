@@ -0,0 +1,41 @@
+package org.treeml;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dependency.checkReferences, which parses the referrer on every call and the source group only on the first,
+ * reusing its values while the source files are unchanged.
+ * The career fixture refers from its exit careers to its own skills.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DependencyBenchmark {
+
+    private Dependency dependency;
+    private Dependency.DocumentGroup source;
+    private List<String> referrerPath;
+
+    @Setup
+    public void setup() {
+        dependency = new Dependency();
+        source = new Dependency.DocumentGroup();
+        source.documents.add("/test/career.tree");
+        source.path = Arrays.asList("career", "skill", "id", "nodeValue");
+        referrerPath = Arrays.asList("career", "exit_career", "id", "nodeValue");
+    }
+
+    @Benchmark
+    public Map<Integer, String> checkReferences() throws IOException {
+        return dependency.checkReferences("/test/career.tree", referrerPath, source);
+    }
+}
@@ -0,0 +1,62 @@
+package org.treeml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loads benchmark documents from the test fixtures, or generates larger ones.
+ */
+final class Documents {
+
+    private Documents() {
+    }
+
+    /**
+     * A fixture from the test resources, or "generated-tab-NNNk"/"generated-curly-NNNk" for a document
+     * of about NNN kilobytes from CorpusGenerator with its default shape.
+     */
+    static String get(String name) {
+        if (name.startsWith("generated-")) {
+            int kilobytes = Integer.parseInt(name.split("-")[2].replace("k", ""));
+            return generator(name).generate(kilobytes * 1024L);
+        }
+        return load(name.endsWith(".schema") ? "/schema/" + name : "/test/" + name);
+    }
+
+    /**
+     * The generator of a "generated-" document, whose schema() the document is valid against.
+     */
+    static CorpusGenerator generator(String name) {
+        boolean curly = "curly".equals(name.split("-")[1]);
+        return new CorpusGenerator(3, 4, 8, curly, 1, CorpusGenerator.evenMix());
+    }
+
+    static String load(String classPath) {
+        InputStream in = Documents.class.getResourceAsStream(classPath);
+        if (in == null) {
+            throw new IllegalArgumentException("No such resource: " + classPath);
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            StringBuilder sb = new StringBuilder();
+            char[] chars = new char[8192];
+            int n;
+            while ((n = reader.read(chars)) != -1) {
+                sb.append(chars, 0, n);
+            }
+            return sb.toString();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static long countNodes(Node node) {
+        long count = node.children.size();
+        for (Node child : node.children) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+}
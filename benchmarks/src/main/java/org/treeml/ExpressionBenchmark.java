@@ -0,0 +1,56 @@
+package org.treeml;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expression.eval over the paths, predicates and functions of the expression language.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpressionBenchmark {
+
+    @Param({
+            "'literal'",
+            "career.careerName",
+            "career[0].objective[3].name",
+            "career.skill[:'beg']()",
+            "career.objective[1].entity(name)",
+            "career.*[7].level(integer)",
+            "k0.k2.k3(listSize)",
+            "k0.k2.k3(2)",
+            "record[2500].v0_1"
+    })
+    public String expression;
+
+    private Node document;
+    private CompiledExpression compiled;
+
+    @Setup
+    public void setup() throws IOException {
+        String fixture = expression.startsWith("k0") ? "testBig.tree"
+                : expression.startsWith("record") ? "generated-tab-8192k" : "career.tree";
+        document = new Parser2().parse(new StringReader(Documents.get(fixture)));
+        compiled = Expression.compile(expression);
+    }
+
+    @Benchmark
+    public Object eval() {
+        return Expression.eval(document, expression);
+    }
+
+    /**
+     * The same expression compiled once, so only the tree walk is measured.
+     */
+    @Benchmark
+    public Object compiled() {
+        return compiled.eval(document);
+    }
+}
@@ -0,0 +1,151 @@
+package org.treeml;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parser2.parse(Reader) over tab and curly fixtures and generated documents,
+ * building the DOM and in streaming mode, the same documents parsed from a file,
+ * pulled through a TreeMLReader, and built as a TapeDocument.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"career.tree", "careerCurly.tree", "testBig.tree", "generated-tab-1024k", "generated-curly-1024k"})
+    public String document;
+
+    private String text;
+    private long bytes;
+    private long nodes;
+    private Parser2 domParser;
+    private Parser2 streamingParser;
+    private Path file;
+    private byte[] utf8;
+
+    @Setup
+    public void setup() throws IOException {
+        text = Documents.get(document);
+        utf8 = text.getBytes(StandardCharsets.UTF_8);
+        bytes = utf8.length;
+        domParser = new Parser2(new Parser2.Options(false, false, false, false), Collections.emptyList());
+        streamingParser = new Parser2(new Parser2.Options(false, false, true, false), Collections.emptyList());
+        nodes = Documents.countNodes(domParser.parse(new StringReader(text)));
+        file = Files.createTempFile("treeml-bench", ".tree");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Node dom(Throughput throughput) throws IOException {
+        Node node = domParser.parse(new StringReader(text));
+        throughput.add(bytes, nodes);
+        return node;
+    }
+
+    @Benchmark
+    public Node streaming(Throughput throughput) throws IOException {
+        Node node = streamingParser.parse(new StringReader(text));
+        throughput.add(bytes, nodes);
+        return node;
+    }
+
+    /**
+     * Streaming parse of UTF-8 bytes decoded by an InputStreamReader.
+     */
+    @Benchmark
+    public Node inputStreamReader(Throughput throughput) throws IOException {
+        Node node = streamingParser.parse(new InputStreamReader(new ByteArrayInputStream(utf8), StandardCharsets.UTF_8));
+        throughput.add(bytes, nodes);
+        return node;
+    }
+
+    /**
+     * Streaming parse of the same bytes through parse(InputStream), which lexes them undecoded.
+     */
+    @Benchmark
+    public Node inputStream(Throughput throughput) throws IOException {
+        Node node = streamingParser.parse(new ByteArrayInputStream(utf8));
+        throughput.add(bytes, nodes);
+        return node;
+    }
+
+    /**
+     * Streaming parse of the document on disk through parse(File) and its FileReader.
+     */
+    @Benchmark
+    public Node fileReader(Throughput throughput) throws IOException {
+        Node node = streamingParser.parse(file.toFile());
+        throughput.add(bytes, nodes);
+        return node;
+    }
+
+    /**
+     * Streaming parse of the document on disk through the memory-mapped parse(Path).
+     */
+    @Benchmark
+    public Node mappedPath(Throughput throughput) throws IOException {
+        Node node = streamingParser.parse(file);
+        throughput.add(bytes, nodes);
+        return node;
+    }
+
+    /**
+     * Every event pulled through a TreeMLReader, looking at each value's characters but making no Strings.
+     */
+    @Benchmark
+    public long reader(Throughput throughput) throws IOException {
+        long sum = 0;
+        try (TreeMLReader reader = new TreeMLReader(new StringReader(text))) {
+            while (reader.next() != TreeMLReader.Event.END_DOCUMENT) {
+                sum += reader.getTextLength();
+            }
+        }
+        throughput.add(bytes, nodes);
+        return sum;
+    }
+
+    @Benchmark
+    public TapeDocument tape(Throughput throughput) throws IOException {
+        TapeDocument document = TapeDocument.parse(new StringReader(text));
+        throughput.add(bytes, nodes);
+        return document;
+    }
+
+    /**
+     * DOM parse whose values are left undecoded, as a reader touching few of them would want.
+     */
+    @Benchmark
+    public Node lazy(Throughput throughput) {
+        Node node = domParser.parseLazy(text);
+        throughput.add(bytes, nodes);
+        return node;
+    }
+
+    /**
+     * The first pass of an on-demand parse, and the first top-level entry, as a reader wanting one entry would.
+     */
+    @Benchmark
+    public Node onDemand(Throughput throughput) {
+        Node node = domParser.parseOnDemand(text).children.get(0);
+        throughput.add(bytes, nodes);
+        return node;
+    }
+}
@@ -0,0 +1,75 @@
+package org.treeml;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many expressions against one document: each evaluated on its own, against a QuerySet of them all.
+ * The expressions are indexed paths to the document's own nodes, so like a rule set's they share their
+ * first steps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuerySetBenchmark {
+
+    @Param({"50", "300"})
+    public int expressions;
+
+    private Node document;
+    private CompiledExpression[] compiled;
+    private QuerySet querySet;
+
+    @Setup
+    public void setup() throws IOException {
+        document = new Parser2().parse(new StringReader(Documents.get("generated-tab-64k")));
+        List<String> paths = new ArrayList<>();
+        collect(document, "", paths);
+        List<String> chosen = new ArrayList<>();
+        for (int i = 0; i < expressions; i++) {
+            chosen.add(paths.get((int) ((long) i * paths.size() / expressions)));
+        }
+        compiled = new CompiledExpression[chosen.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = Expression.compile(chosen.get(i));
+        }
+        querySet = new QuerySet(chosen);
+    }
+
+    private static void collect(Node node, String prefix, List<String> paths) {
+        Map<String, Integer> seen = new HashMap<>();
+        for (Node child : node.children) {
+            int n = seen.merge(child.name, 1, Integer::sum) - 1;
+            String path = prefix + child.name + '[' + n + ']';
+            if (child.children.isEmpty()) {
+                paths.add(path);
+            } else {
+                collect(child, path + '.', paths);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object[] each() {
+        Object[] results = new Object[compiled.length];
+        for (int i = 0; i < compiled.length; i++) {
+            results[i] = compiled[i].eval(document);
+        }
+        return results;
+    }
+
+    @Benchmark
+    public Object[] querySet() {
+        return querySet.eval(document);
+    }
+}
@@ -0,0 +1,187 @@
+package org.treeml;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Macro benchmark: generates documents of growing size with CorpusGenerator, then parses, validates
+ * and queries each one, printing a CSV row per size. Time per node should stay flat while
+ * Parser2, DomListener and RootNode.append scale linearly.
+ * <p>
+ * Usage: ScaleCurve [min=1k] [max=64m] [factor=4] [dir=tmpdir] [keep=false] [generator options]
+ * <p>
+ * Generator options are those of CorpusGenerator. Sizes the DOM cannot hold are still parsed in
+ * streaming mode, and the DOM columns report OOM.
+ */
+public class ScaleCurve {
+
+    private static Object retained;
+
+    public static void main(String[] args) throws IOException {
+        long min = CorpusGenerator.parseSize(CorpusGenerator.arg(args, "min", "1k"));
+        long max = CorpusGenerator.parseSize(CorpusGenerator.arg(args, "max", "64m"));
+        int factor = Integer.parseInt(CorpusGenerator.arg(args, "factor", "4"));
+        File dir = new File(CorpusGenerator.arg(args, "dir", System.getProperty("java.io.tmpdir")));
+        boolean keep = Boolean.parseBoolean(CorpusGenerator.arg(args, "keep", "false"));
+
+        warmUp(args, dir);
+        System.out.println("bytes,records,nodes,stream_ms,stream_MBps,parse_ms,parse_MBps,parse_ns_per_node,"
+                + "peak_heap_MB,retained_MB,retained_bytes_per_node,validate_ms,validate_ns_per_node,query_us");
+        for (long size = min; size <= max; size *= factor) {
+            CorpusGenerator generator = CorpusGenerator.fromArgs(args, 0);
+            File file = new File(dir, "treeml-scale-" + size + (generator.curly ? "-curly" : "-tab") + ".tree");
+            long bytes;
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+                bytes = generator.write(out, size);
+            }
+            try {
+                System.out.println(measure(file, bytes, generator));
+            } finally {
+                if (!keep && !file.delete()) {
+                    System.err.println("Could not delete " + file);
+                }
+            }
+        }
+    }
+
+    //runs the whole pipeline once on a small document so the first rows are not measured in the interpreter
+    private static void warmUp(String[] args, File dir) throws IOException {
+        CorpusGenerator generator = CorpusGenerator.fromArgs(args, 0);
+        File file = new File(dir, "treeml-scale-warmup.tree");
+        long bytes;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            bytes = generator.write(out, 1 << 20);
+        }
+        try {
+            measure(file, bytes, generator);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static String measure(File file, long bytes, CorpusGenerator generator) throws IOException {
+        long nodes = generator.getNodes();
+        Parser2 streaming = new Parser2(new Parser2.Options(false, false, true, false), Collections.emptyList());
+        long start = System.nanoTime();
+        parse(streaming, file);
+        double streamMillis = (System.nanoTime() - start) / 1e6;
+
+        List<Object> row = new ArrayList<>();
+        row.add(bytes);
+        row.add(generator.getRecords());
+        row.add(nodes);
+        row.add(streamMillis);
+        row.add(megabytesPerSecond(bytes, streamMillis));
+        try {
+            Parser2 parser = new Parser2();
+            gc();
+            long baseline = usedHeap();
+            resetPeaks();
+            start = System.nanoTime();
+            RootNode document = (RootNode) parse(parser, file);
+            double parseMillis = (System.nanoTime() - start) / 1e6;
+            long peak = peakHeap();
+            retained = document;
+            gc();
+            long retainedBytes = usedHeap() - baseline;
+            row.add(parseMillis);
+            row.add(megabytesPerSecond(bytes, parseMillis));
+            row.add(parseMillis * 1e6 / nodes);
+            row.add(peak / (1024.0 * 1024.0));
+            row.add(retainedBytes / (1024.0 * 1024.0));
+            row.add((double) retainedBytes / nodes);
+
+            Schema schema = parser.parseSchema(new StringReader(generator.schema()));
+            start = System.nanoTime();
+            parser.validate(document, schema);
+            double validateMillis = (System.nanoTime() - start) / 1e6;
+            row.add(validateMillis);
+            row.add(validateMillis * 1e6 / nodes);
+
+            row.add(query(document, generator));
+        } catch (OutOfMemoryError e) {
+            retained = null;
+            for (int i = 0; i < 8; i++) {
+                row.add("OOM");
+            }
+        } finally {
+            retained = null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Object cell : row) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(cell instanceof Double ? String.format(Locale.ROOT, "%.3f", cell) : cell);
+        }
+        return sb.toString();
+    }
+
+    private static Node parse(Parser2 parser, File file) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return parser.parse(reader);
+        }
+    }
+
+    //first, middle and last record, by position and by value, plus a path into the deepest level
+    private static double query(Node document, CorpusGenerator generator) {
+        long records = generator.getRecords();
+        List<String> expressions = new ArrayList<>();
+        expressions.add("record.v0_0");
+        expressions.add("record[" + (records / 2) + "].v0_1()");
+        expressions.add("record[:'r" + records + "'](name)");
+        StringBuilder deep = new StringBuilder("record[" + (records - 1) + "]");
+        for (int level = 1; level < generator.depth; level++) {
+            deep.append(".g").append(level).append('[').append(generator.fanOut - 1).append(']');
+        }
+        expressions.add(deep.append(".v").append(generator.depth - 1).append("_0(name)").toString());
+        long start = System.nanoTime();
+        for (String expression : expressions) {
+            if (Expression.eval(document, expression) == null) {
+                throw new IllegalStateException("Query found nothing: " + expression);
+            }
+        }
+        return (System.nanoTime() - start) / 1e3;
+    }
+
+    private static double megabytesPerSecond(long bytes, double millis) {
+        return bytes / (1024.0 * 1024.0) / (millis / 1000.0);
+    }
+
+    private static void gc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    //sum of the per-pool peaks, an upper bound on the heap in use at any one time
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
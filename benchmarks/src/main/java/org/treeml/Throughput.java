@@ -0,0 +1,29 @@
+package org.treeml;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary JMH counters, reported per second next to the primary ops/s score:
+ * megabytes is MB/s of input consumed and nodes is nodes/s produced.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+    public double megabytes;
+    public long nodes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+        nodes = 0;
+    }
+
+    void add(long bytes, long nodeCount) {
+        megabytes += bytes / (1024.0 * 1024.0);
+        nodes += nodeCount;
+    }
+}
@@ -0,0 +1,82 @@
+package org.treeml;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParserBase.validate on an already parsed document, excluding parse time, sequentially and on
+ * the common ForkJoinPool, and parsing with validation, building the DOM or streaming through a
+ * ValidatingListener. A "generated-" document is validated against its generator's schema.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidateBenchmark {
+
+    @Param({"career.tree:career.schema", "types-pass-01.tree:types.schema", "generated-tab-8192k:generated"})
+    public String pair;
+
+    private Parser2 parser;
+    private Parser2 streamingParser;
+    private String text;
+    private RootNode document;
+    private Schema schema;
+    private long bytes;
+    private long nodes;
+
+    @Setup
+    public void setup() throws IOException {
+        String[] split = pair.split(":");
+        parser = new Parser2();
+        streamingParser = new Parser2(new Parser2.Options(false, false, true, false), Collections.emptyList());
+        String schemaText;
+        if (split[0].startsWith("generated-")) {
+            text = Documents.get(split[0]);
+            schemaText = Documents.generator(split[0]).schema();
+        } else {
+            text = Documents.load(split[0].startsWith("types") ? "/schema/" + split[0] : "/test/" + split[0]);
+            schemaText = Documents.get(split[1]);
+        }
+        document = (RootNode) parser.parse(new StringReader(text));
+        bytes = text.getBytes(StandardCharsets.UTF_8).length;
+        schema = parser.parseSchema(new StringReader(schemaText));
+        nodes = Documents.countNodes(document);
+    }
+
+    @Benchmark
+    public Schema validate(Throughput throughput) {
+        parser.validate(document, schema);
+        throughput.add(bytes, nodes);
+        return schema;
+    }
+
+    @Benchmark
+    public Schema validateParallel(Throughput throughput) {
+        parser.validate(document, schema, ForkJoinPool.commonPool());
+        throughput.add(bytes, nodes);
+        return schema;
+    }
+
+    @Benchmark
+    public Node parseAndValidate(Throughput throughput) throws IOException {
+        Node node = parser.doParse(new StringReader(text), schema);
+        throughput.add(bytes, nodes);
+        return node;
+    }
+
+    @Benchmark
+    public Node streamingValidate(Throughput throughput) throws IOException {
+        Node node = streamingParser.doParse(new StringReader(text), schema);
+        throughput.add(bytes, nodes);
+        return node;
+    }
+}
@@ -0,0 +1,110 @@
+package org.treeml;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The children of a node by name, so finding the nth child of a name, or the first whose value matches, need
+ * not scan all of them. Node builds one on the first lookup of a node with at least MIN_CHILDREN children, and
+ * again when its children list is replaced or changed; values are indexed as they are on the first lookup by
+ * value of each name. Names and values are public fields, so the index cannot see them change: a child renamed
+ * away from a name, or losing a value, is caught when a lookup returns it, but one renamed to a name, or given a
+ * value, is not found until Node.reindex is called or the children list changes.
+ */
+final class ChildIndex {
+
+    static final int MIN_CHILDREN = 16;
+
+    private static final int[] NONE = new int[0];
+
+    private final List<Node> children;
+    private final int size;
+    private final int changes;
+    private final OnDemandChildren onDemand;
+    //the positions in children of each name, in order
+    private final Map<String, int[]> positions = new HashMap<>();
+    //per name, the position of the first child having each value, or a list containing it
+    private final Map<String, Map<Object, Integer>> values = new ConcurrentHashMap<>();
+
+    ChildIndex(List<Node> children) {
+        this.children = children;
+        this.size = children.size();
+        this.changes = changes(children);
+        this.onDemand = children instanceof OnDemandChildren ? (OnDemandChildren) children : null;
+        String[] names = new String[size];
+        Map<String, int[]> counts = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String name = name(i);
+            names[i] = name;
+            int[] count = counts.get(name);
+            if (count == null) {
+                counts.put(name, new int[]{1});
+            } else {
+                count[0]++;
+            }
+        }
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            positions.put(entry.getKey(), new int[entry.getValue()[0]]);
+            entry.getValue()[0] = 0;
+        }
+        for (int i = 0; i < size; i++) {
+            int[] count = counts.get(names[i]);
+            positions.get(names[i])[count[0]++] = i;
+        }
+    }
+
+    boolean isOf(List<Node> children) {
+        return this.children == children && size == children.size() && changes == changes(children);
+    }
+
+    private static int changes(List<Node> children) {
+        return children instanceof Node.Children ? ((Node.Children) children).changes() : 0;
+    }
+
+    //the names of an on demand parse are known without parsing the nodes
+    private String name(int i) {
+        return onDemand == null ? children.get(i).name : onDemand.name(i);
+    }
+
+    /**
+     * Whether the children at the first n + 1 positions still have the name.
+     */
+    boolean named(String name, int[] positions, int n) {
+        for (int i = 0; i <= n; i++) {
+            if (!name.equals(name(positions[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int[] positions(String name) {
+        int[] result = positions.get(name);
+        return result == null ? NONE : result;
+    }
+
+    /**
+     * The position of the first child of the name whose value is value or a list containing it, or -1.
+     */
+    int first(String name, Object value) {
+        Map<Object, Integer> byValue = values.get(name);
+        if (byValue == null) {
+            byValue = new HashMap<>();
+            for (int i : positions(name)) {
+                Object v = children.get(i).getValue();
+                if (v instanceof List<?>) {
+                    for (Object item : (List<?>) v) {
+                        byValue.putIfAbsent(item, i);
+                    }
+                } else {
+                    byValue.putIfAbsent(v, i);
+                }
+            }
+            values.put(name, byValue);
+        }
+        Integer i = byValue.get(value);
+        return i == null ? -1 : i;
+    }
+}
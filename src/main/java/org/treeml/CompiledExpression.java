@@ -0,0 +1,242 @@
+package org.treeml;
+
+import java.util.List;
+
+/**
+ * An expression parsed once by Expression.compile, for evaluating against any number of nodes.
+ * It is immutable, so one instance can be shared between threads, and it evaluates exactly as
+ * Expression.eval does, errors included: a step that does not parse only throws when it is reached.
+ * Steps are looked up with Node.child and Node.childWithValue, so after renaming or revaluing children of a
+ * wide node, call Node.reindex on it, as those say.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class CompiledExpression {
+
+    //what the function at the end of the path returns
+    static final int VALUE = 0, NAME = 1, IS_INTEGER = 2, IS_DOUBLE = 3, IS_STRING = 4, IS_BOOLEAN = 5, IS_LIST = 6,
+            LIST_SIZE = 7, ITEM = 8, UNKNOWN = 9;
+
+    private final String text;
+    //the value of a literal expression, which has no steps
+    final boolean literal;
+    private final Object literalValue;
+    final Step[] steps;
+    final int function;
+    //the item of (N), and the error if N is not an int
+    private final int item;
+    private final RuntimeException itemError;
+    private final String functionText;
+
+    /**
+     * One step of the path: a node name or *, and an index or a value to match.
+     */
+    static final class Step {
+        final String text;
+        final String name;
+        final boolean any;
+        final boolean hasIndex;
+        final int index;
+        final boolean hasTestValue;
+        final Object testValue;
+        //why the step could not be parsed, thrown when it is reached
+        final RuntimeException error;
+
+        Step(String step) {
+            String name = null;
+            boolean hasIndex = false;
+            int index = 0;
+            boolean hasTestValue = false;
+            Object testValue = null;
+            RuntimeException error = null;
+            try {
+                String[] predicateSplit = step.split("\\[");
+                String predicate = predicateSplit.length == 2 ? predicateSplit[1] : null;
+                if (predicate != null) {
+                    if (predicate.endsWith("]")) {
+                        predicate = predicate.substring(0, predicate.length() - 1);
+                    } else {
+                        throw new RuntimeException("Unclosed predicate.");
+                    }
+                    hasTestValue = predicate.startsWith(":");
+                    if (!hasTestValue) {
+                        index = Integer.parseInt(predicate);
+                        hasIndex = true;
+                    }
+                    testValue = hasTestValue ? Expression.getLiteral(predicate.substring(1), true) : null;
+                }
+                if (predicateSplit.length > 2) {
+                    throw new RuntimeException("Multiple predicates forbidden.");
+                }
+                name = predicateSplit[0];
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            this.text = step;
+            this.name = name;
+            this.any = "*".equals(name);
+            this.hasIndex = hasIndex;
+            this.index = index;
+            this.hasTestValue = hasTestValue;
+            this.testValue = testValue;
+            this.error = error;
+        }
+
+        boolean matchesName(Node child) {
+            return any || name.equals(child.name);
+        }
+
+        //whether the child, the nth of those whose name matches, is the one to take
+        boolean selects(Node child, int n) {
+            return (!hasIndex && !hasTestValue) || (hasIndex && index == n)
+                    || (hasTestValue && Expression.matches(child.getValue(), testValue, true));
+        }
+    }
+
+    CompiledExpression(String expression) {
+        this.text = expression;
+        Object x = Expression.getLiteral(expression, false);
+        literal = x != null;
+        literalValue = x;
+        if (literal) {
+            functionText = null;
+            steps = new Step[0];
+        } else {
+            String[] functionSplit = expression.split("\\(");
+            functionText = functionSplit.length == 2 ? '(' + functionSplit[1] : null;
+            String[] parts = functionSplit[0].split("\\.");
+            steps = new Step[parts.length];
+            for (int i = 0; i < steps.length; i++) {
+                steps[i] = new Step(parts[i]);
+            }
+        }
+        int item = 0;
+        RuntimeException itemError = null;
+        if (functionText == null || "()".equals(functionText)) {
+            function = VALUE;
+        } else if ("(name)".equals(functionText)) {
+            function = NAME;
+        } else if ("(integer)".equals(functionText)) {
+            function = IS_INTEGER;
+        } else if ("(double)".equals(functionText)) {
+            function = IS_DOUBLE;
+        } else if ("(string)".equals(functionText)) {
+            function = IS_STRING;
+        } else if ("(boolean)".equals(functionText)) {
+            function = IS_BOOLEAN;
+        } else if ("(list)".equals(functionText)) {
+            function = IS_LIST;
+        } else if ("(listSize)".equals(functionText)) {
+            function = LIST_SIZE;
+        } else if (isItem(functionText)) {
+            function = ITEM;
+            try {
+                item = Integer.parseInt(functionText.substring(1, functionText.length() - 1));
+            } catch (NumberFormatException e) {
+                itemError = new RuntimeException("Could not evaluate function: " + functionText, e);
+            }
+        } else {
+            function = UNKNOWN;
+        }
+        this.item = item;
+        this.itemError = itemError;
+    }
+
+    //(N) for digits N
+    private static boolean isItem(String function) {
+        int length = function.length();
+        if (length < 3 || function.charAt(0) != '(' || function.charAt(length - 1) != ')') {
+            return false;
+        }
+        for (int i = 1; i < length - 1; i++) {
+            char c = function.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Object eval(Node node) {
+        if (literal) {
+            return literalValue;
+        }
+        try {
+            for (Step step : steps) {
+                node = child(node, step);
+                if (node == null) {
+                    return null;
+                }
+            }
+            return apply(node);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Syntax error: " + text, e);
+        }
+    }
+
+    /**
+     * The child of the node the step goes to, or null.
+     */
+    static Node child(Node node, Step step) {
+        if (step.error != null) {
+            throw step.error;
+        }
+        if (!step.any) {
+            return step.hasTestValue ? node.childWithValue(step.name, step.testValue)
+                    : node.child(step.name, step.hasIndex ? step.index : 0);
+        }
+        int n = 0;
+        for (Node child : node.children) {
+            if (step.matchesName(child)) {
+                if (step.selects(child, n)) {
+                    return child;
+                }
+                n++;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The function applied to the node at the end of the path.
+     */
+    Object apply(Node node) {
+        Object value = node.getValue();
+        switch (function) {
+            case VALUE:
+                return value;
+            case NAME:
+                return node.name;
+            case IS_INTEGER:
+                return value instanceof Long;
+            case IS_DOUBLE:
+                return value instanceof Double;
+            case IS_STRING:
+                return value instanceof String;
+            case IS_BOOLEAN:
+                return value instanceof Boolean;
+            case IS_LIST:
+                return value instanceof List<?>;
+            case LIST_SIZE:
+                return (long) ((List<?>) value).size();
+            case ITEM:
+                if (!(value instanceof List<?>)) {
+                    throw new RuntimeException("List function used on non-list value: " + value);
+                }
+                if (itemError != null) {
+                    throw itemError;
+                }
+                return ((List<?>) value).get(item);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,134 @@
+package org.treeml;
+
+import java.util.*;
+
+/**
+ * A Schema flattened into tables for validation. Schema nodes become numbered states, node names become
+ * ids, and what happens when a name turns up at a position in a sibling list is looked up rather than
+ * found by walking the schema. Immutable once built; get one from Schema.compile().
+ */
+@SuppressWarnings("WeakerAccess")
+public final class CompiledSchema {
+
+    static final int SINGLE = 1, OPTIONAL = 1 << 1, MANDATORY_CHILDREN = 1 << 2,
+            STRING = 1 << 3, TOKEN = 1 << 4, TOKENID = 1 << 5, TOKENIDREF = 1 << 6, INTEGER = 1 << 7,
+            DECIMAL = 1 << 8, BOOLEAN = 1 << 9, LIST = 1 << 10, DURATION = 1 << 11, DATE_TIME = 1 << 12;
+
+    /**
+     * No state: the end of a sibling list, and the result of match when the name is not expected (V002).
+     * Other negative results are V001, see expected.
+     */
+    static final int NONE = -1;
+
+    private static final String WILDCARD = "token";
+
+    private final Map<String, Integer> nameIds;
+    //the id of names that are not in the schema
+    private final int unknown;
+    //per state
+    final String[] names;
+    final int[] flags;
+    final int[] next;
+    final int[] firstChild;
+    //match results, by state and name id, for the first and for later nodes at a position
+    private final int[] first;
+    private final int[] again;
+
+    CompiledSchema(Schema schema) {
+        List<SchemaNode> nodes = new ArrayList<>();
+        Map<SchemaNode, Integer> states = new IdentityHashMap<>();
+        number(schema.start, nodes, states);
+        int n = nodes.size();
+        Map<String, Integer> ids = new HashMap<>();
+        names = new String[n];
+        flags = new int[n];
+        next = new int[n];
+        firstChild = new int[n];
+        for (int i = 0; i < n; i++) {
+            SchemaNode node = nodes.get(i);
+            names[i] = node.name;
+            flags[i] = flags(node);
+            next[i] = node.next == null ? NONE : states.get(node.next);
+            firstChild[i] = node.children.isEmpty() ? NONE : states.get(node.children.get(0));
+            if (node.name != null && !ids.containsKey(node.name)) {
+                ids.put(node.name, ids.size());
+            }
+        }
+        nameIds = Collections.unmodifiableMap(ids);
+        unknown = ids.size();
+        int columns = unknown + 1;
+        String[] idNames = new String[columns];
+        for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+            idNames[entry.getValue()] = entry.getKey();
+        }
+        first = new int[n * columns];
+        again = new int[n * columns];
+        for (int state = 0; state < n; state++) {
+            for (int id = 0; id < columns; id++) {
+                first[state * columns + id] = walk(state, idNames[id], false);
+                again[state * columns + id] = walk(state, idNames[id], true);
+            }
+        }
+    }
+
+    private static void number(SchemaNode node, List<SchemaNode> nodes, Map<SchemaNode, Integer> states) {
+        states.put(node, nodes.size());
+        nodes.add(node);
+        for (SchemaNode child : node.children) {
+            number(child, nodes, states);
+        }
+    }
+
+    private static int flags(SchemaNode node) {
+        return (node.single ? SINGLE : 0) | (node.optional ? OPTIONAL : 0) | (node.hasMandatoryChildren() ? MANDATORY_CHILDREN : 0)
+                | (node.string ? STRING : 0) | (node.token ? TOKEN : 0) | (node.tokenid ? TOKENID : 0)
+                | (node.tokenidref ? TOKENIDREF : 0) | (node.integer ? INTEGER : 0) | (node.decimal ? DECIMAL : 0)
+                | (node.bool ? BOOLEAN : 0) | (node.list ? LIST : 0) | (node.duration ? DURATION : 0)
+                | (node.dateTime ? DATE_TIME : 0);
+    }
+
+    //where the name is found along the sibling list from the state, as ParserBase.validate used to walk it;
+    //a null name is one that is not in the schema
+    private int walk(int state, String name, boolean secondOrMore) {
+        while (true) {
+            String expected = names[state];
+            if (WILDCARD.equals(expected) || (name != null && name.equals(expected))) {
+                return state;
+            } else if ((flags[state] & OPTIONAL) == 0 && !secondOrMore) {
+                return -2 - state;
+            }
+            state = next[state];
+            if (state == NONE) {
+                return NONE;
+            }
+        }
+    }
+
+    int nameId(String name) {
+        Integer id = nameIds.get(name);
+        return id == null ? unknown : id;
+    }
+
+    /**
+     * The state a node named by the id takes, from the position reached in its sibling list; NONE if
+     * the node is not expected (V002), or another negative number if another node was expected (V001).
+     */
+    int match(int position, int nameId, boolean secondOrMore) {
+        int i = position * (unknown + 1) + nameId;
+        return secondOrMore ? again[i] : first[i];
+    }
+
+    /**
+     * The name of the node expected instead, for a V001 result of match.
+     */
+    String expected(int result) {
+        return names[-2 - result];
+    }
+
+    /**
+     * The state whose children are the top-level nodes.
+     */
+    int root() {
+        return 0;
+    }
+}
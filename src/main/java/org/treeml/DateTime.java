@@ -6,4 +6,14 @@ public class DateTime {
     public DateTime(String value) {
         this.value = value;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof DateTime && value.equals(((DateTime) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
 }
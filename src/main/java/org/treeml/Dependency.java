@@ -1,8 +1,19 @@
 package org.treeml;
 
-import java.io.IOException;
+import java.io.*;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Evaluates that a document (the referrer) makes references existing values in another document
@@ -20,6 +31,11 @@ public class Dependency {
         parser = new Parser2();
     }
 
+    /**
+     * Parses documents with the parser. Documents are parsed in parallel only when it is a Parser2 without
+     * listeners, whether given or added by its options, since a listener is not meant to see two documents at a
+     * time; with any other parser they are parsed one after another.
+     */
     @SuppressWarnings("unused")
     public Dependency(ParserBase parserIf) {
         parser = parserIf;
@@ -53,6 +69,312 @@ public class Dependency {
         return comparer.result;
     }
 
+    /**
+     * Checks every rule against each referrer, parsing each referrer once and walking the paths the rules share
+     * once. Unlike the Map by line of a single check, every broken reference is kept; those of each referrer are
+     * in order of line. Referrers are checked in parallel when the parser allows it, as Dependency(ParserBase) says.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public Map<String, List<BrokenReference>> checkReferences(List<String> referrers, List<Rule> rules) {
+        return checkReferences(referrers, rules, null);
+    }
+
+    /**
+     * As checkReferences, keeping the results in the index file between runs. A referrer is checked again only
+     * if its file has changed since, or the rules have, or the files of any rule's source group; give the
+     * groups an index of their own so that they too only read the sources that changed.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public Map<String, List<BrokenReference>> checkReferences(List<String> referrers, List<Rule> rules, File index) {
+        RuleTrie trie = new RuleTrie();
+        Map<DocumentGroup, Set<Object>> sources = new IdentityHashMap<>();
+        for (Rule rule : rules) {
+            trie.add(rule, 0);
+            if (!sources.containsKey(rule.source)) {
+                sources.put(rule.source, rule.source.eval(true, parser));
+            }
+        }
+        String fingerprint = index == null ? null : fingerprint(rules);
+        Map<String, Checked> checked = fingerprint == null ? new HashMap<>() : loadResults(index, fingerprint);
+        List<String> stale = new ArrayList<>();
+        Map<String, Long> modified = new HashMap<>();
+        for (String referrer : referrers) {
+            long m = index == null ? UNKNOWN : lastModified(parser, referrer);
+            Checked previous = checked.get(referrer);
+            if ((m == UNKNOWN || previous == null || previous.modified != m) && modified.put(referrer, m) == null) {
+                stale.add(referrer);
+            }
+        }
+        List<List<BrokenReference>> results = stream(stale, parser).map(referrer -> {
+            List<BrokenReference> result = new ArrayList<>();
+            try {
+                check(parser.parse(referrer), trie, sources, result);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            result.sort(Comparator.comparingInt(reference -> reference.line));
+            return result;
+        }).collect(Collectors.toList());
+        for (int i = 0; i < stale.size(); i++) {
+            checked.put(stale.get(i), new Checked(modified.get(stale.get(i)), results.get(i)));
+        }
+        Map<String, List<BrokenReference>> result = new LinkedHashMap<>();
+        for (String referrer : referrers) {
+            result.put(referrer, checked.get(referrer).references);
+        }
+        if (fingerprint != null && !stale.isEmpty()) {
+            checked.keySet().retainAll(referrers);
+            saveResults(index, fingerprint, checked);
+        }
+        return result;
+    }
+
+    //the results of one referrer, and its modification time when checked
+    private static final class Checked {
+        final long modified;
+        final List<BrokenReference> references;
+
+        Checked(long modified, List<BrokenReference> references) {
+            this.modified = modified;
+            this.references = references;
+        }
+    }
+
+    private static final int RESULTS_MAGIC = 0x54524952, RESULTS_VERSION = 1;
+
+    //a digest of the rules and their sources as read, or null if a source's time is unknown
+    private static String fingerprint(List<Rule> rules) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Rule rule : rules) {
+                String version = rule.source.version();
+                if (version == null) {
+                    return null;
+                }
+                digest.update((rule.id + '\0' + rule.referrerPath + '\0' + rule.source.path + '\0' + version + '\n')
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //the results kept for the same rules and sources, if any
+    private static Map<String, Checked> loadResults(File index, String fingerprint) {
+        Map<String, Checked> checked = new HashMap<>();
+        if (!index.exists()) {
+            return checked;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+            if (in.readInt() != RESULTS_MAGIC || in.readInt() != RESULTS_VERSION) {
+                throw new IOException("Not a reference check index");
+            }
+            if (!readString(in).equals(fingerprint)) {
+                return checked;
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String referrer = readString(in);
+                long modified = in.readLong();
+                List<BrokenReference> references = new ArrayList<>();
+                for (int j = in.readInt(); j > 0; j--) {
+                    references.add(new BrokenReference(readString(in), in.readInt(), readString(in)));
+                }
+                checked.put(referrer, new Checked(modified, references));
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Ignoring reference check index " + index + ": " + e);
+            checked.clear();
+        }
+        return checked;
+    }
+
+    private static void saveResults(File index, String fingerprint, Map<String, Checked> checked) {
+        writeIndex(index, out -> {
+            out.writeInt(RESULTS_MAGIC);
+            out.writeInt(RESULTS_VERSION);
+            writeString(out, fingerprint);
+            List<Map.Entry<String, Checked>> known = new ArrayList<>();
+            for (Map.Entry<String, Checked> entry : checked.entrySet()) {
+                if (entry.getValue().modified != UNKNOWN) {
+                    known.add(entry);
+                }
+            }
+            out.writeInt(known.size());
+            for (Map.Entry<String, Checked> entry : known) {
+                writeString(out, entry.getKey());
+                out.writeLong(entry.getValue().modified);
+                out.writeInt(entry.getValue().references.size());
+                for (BrokenReference reference : entry.getValue().references) {
+                    writeString(out, reference.ruleId);
+                    out.writeInt(reference.line);
+                    writeString(out, reference.message);
+                }
+            }
+        });
+    }
+
+    public List<BrokenReference> checkReferences(String referrer, List<Rule> rules) {
+        return checkReferences(Collections.singletonList(referrer), rules).get(referrer);
+    }
+
+    /**
+     * Referrers' nodes on a path must name or have a value found in a source group.
+     */
+    public static class Rule {
+        public final String id;
+        public final List<String> referrerPath;
+        public final DocumentGroup source;
+
+        public Rule(String id, List<String> referrerPath, DocumentGroup source) {
+            String finalStep = referrerPath.get(referrerPath.size() - 1);
+            if (!"nodeName".equals(finalStep) && !"nodeValue".equals(finalStep)) {
+                throw new RuntimeException("Final step in path must be nodeName or nodeValue.");
+            }
+            this.id = id;
+            this.referrerPath = referrerPath;
+            this.source = source;
+        }
+    }
+
+    public static class BrokenReference {
+        public final String ruleId;
+        public final int line;
+        public final String message;
+
+        BrokenReference(String ruleId, int line, String message) {
+            this.ruleId = ruleId;
+            this.line = line;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return ruleId + " " + line + " : " + message;
+        }
+    }
+
+    /**
+     * The steps of the rules' paths, so a prefix several share is walked once.
+     */
+    private static final class RuleTrie {
+        final Map<String, RuleTrie> next = new LinkedHashMap<>();
+        final List<Rule> ends = new ArrayList<>();
+
+        void add(Rule rule, int step) {
+            if (step == rule.referrerPath.size() - 1) {
+                ends.add(rule);
+            } else {
+                next.computeIfAbsent(rule.referrerPath.get(step), s -> new RuleTrie()).add(rule, step + 1);
+            }
+        }
+    }
+
+    private static void check(Node node, RuleTrie trie, Map<DocumentGroup, Set<Object>> sources, List<BrokenReference> result) {
+        for (Rule rule : trie.ends) {
+            if ("nodeName".equals(rule.referrerPath.get(rule.referrerPath.size() - 1))) {
+                if (!sources.get(rule.source).contains(node.name)) {
+                    result.add(new BrokenReference(rule.id, node.line, "L0003: Node name not in source: " + node.name));
+                }
+            } else if (!sources.get(rule.source).contains(node.getValue())) {
+                result.add(new BrokenReference(rule.id, node.line, "L0004: Node value not in source: " + node.getValue()));
+            }
+        }
+        if (trie.next.isEmpty()) {
+            return;
+        }
+        //as Schema.nameMatch, token matches any name
+        RuleTrie any = trie.next.get("token");
+        if (any != null && trie.next.size() == 1) {
+            for (Node child : node.children) {
+                check(child, any, sources, result);
+            }
+            return;
+        }
+        for (Node child : node.children) {
+            RuleTrie named = trie.next.get(child.name);
+            if (named != null && named != any) {
+                check(child, named, sources, result);
+            }
+            if (any != null) {
+                check(child, any, sources, result);
+            }
+        }
+    }
+
+    //the documents, in parallel if the parser can parse them so
+    static Stream<String> stream(List<String> documents, ParserBase parser) {
+        boolean parallel = parser instanceof Parser2 && ((Parser2) parser).listeners.isEmpty();
+        return parallel ? documents.parallelStream() : documents.stream();
+    }
+
+    //the modification time of a document not in a file or jar of the class path, which is read every time
+    static final long UNKNOWN = Long.MIN_VALUE;
+
+    //the modification time of a document's file, or of the jar it is in
+    static long lastModified(ParserBase parser, String document) {
+        URL url = parser.getClass().getResource(document);
+        if (url == null) {
+            return UNKNOWN;
+        }
+        try {
+            if ("jar".equals(url.getProtocol())) {
+                url = ((JarURLConnection) url.openConnection()).getJarFileURL();
+            }
+            if (!"file".equals(url.getProtocol())) {
+                return UNKNOWN;
+            }
+            long modified = new File(url.toURI()).lastModified();
+            return modified == 0 ? UNKNOWN : modified;
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            return UNKNOWN;
+        }
+    }
+
+    //for strings that may be longer than writeUTF allows
+    static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //writes through a temporary file, so a run that stops part way leaves the old file
+    static void writeIndex(File file, IndexWriter writer) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write index " + file, e);
+        }
+        try {
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write index " + file, e);
+        }
+    }
+
+    interface IndexWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
     public interface TreeWalker {
         void walk(boolean unique, List<Node> found, String finalStep);
     }
@@ -81,13 +403,8 @@ public class Dependency {
             String s = path.get(i);
             List<Node> temp = new ArrayList<>();
             for (Node foundLevel : found) {
-                for (Node nextLevel : foundLevel.children) {
-                    final SchemaNode sn = new SchemaNode(null);
-                    sn.name = s;
-                    if (Schema.nameMatch(nextLevel, sn)) {
-                        temp.add(nextLevel);
-                    }
-                }
+                //as Schema.nameMatch, token matches any name
+                temp.addAll("token".equals(s) ? foundLevel.children : foundLevel.children(s));
             }
             found = temp;
         }
@@ -106,10 +423,10 @@ public class Dependency {
             }
         } else if ("nodeValue".equals(finalStep)) {
             for (Node node : found) {
-                if (unique && result.contains(node.value)) {
-                    throw new RuntimeException("L0002: Node value not unique: " + node.value + " at line " + node.line);
+                if (unique && result.contains(node.getValue())) {
+                    throw new RuntimeException("L0002: Node value not unique: " + node.getValue() + " at line " + node.line);
                 }
-                result.add(node.value);
+                result.add(node.getValue());
             }
         } else {
             throw new RuntimeException("Final step in path must be nodeName or nodeValue.");
@@ -121,30 +438,400 @@ public class Dependency {
         if ("nodeName".equals(finalStep)) {
             found.stream().filter(node -> !values.contains(node.name)).forEach(node -> result.put(node.line, "L0003: Node name not in source: " + node.name));
         } else if ("nodeValue".equals(finalStep)) {
-            found.stream().filter(node -> !values.contains(node.value)).forEach(node -> result.put(node.line, "L0004: Node value not in source: " + node.value));
+            found.stream().filter(node -> !values.contains(node.getValue())).forEach(node -> result.put(node.line, "L0004: Node value not in source: " + node.getValue()));
         } else {
             throw new RuntimeException("Final step in path must be nodeName or nodeValue.");
         }
     }
 
+    /**
+     * Source documents, by class path, and the path to the values they hold. The values are kept after they are
+     * first collected and reused until a file changes, so checking many referrers against one group parses each
+     * source once. Documents that need reading are parsed in parallel when the parser allows it, as
+     * Dependency(ParserBase) says.
+     * <p>
+     * A group holds each value once. One that is not compact holds them in a HashSet, so when a document changes
+     * it reads them all again, unless it has an index, which keeps each document's values in a ValueSet too. A
+     * compact group, for groups too large to hold as Objects in a HashSet, keeps each document's values in a
+     * ValueSet, and looks a value up in each in turn; only changed documents are read again.
+     */
     public static class DocumentGroup {
         List<String> documents = new ArrayList<>();
         List<String> path = new ArrayList<>();
+        //whether the values are ValueSets rather than a HashSet, and their Bloom filters' false positive rate, if any
+        boolean compact;
+        double falsePositiveRate;
+        //where each document's values are kept between runs, if anywhere
+        File index;
+
+        private static final int INDEX_MAGIC = 0x54524947, INDEX_VERSION = 1;
+
+        //the path the cache was collected with, what each document gave, and the values of them all
+        private List<String> cachedPath;
+        private final Map<String, Contribution> cache = new HashMap<>();
+        private Set<Object> values;
+        private List<String> valuesDocuments;
+        private boolean valuesUnique;
+        private boolean valuesCompact;
+        private double valuesRate;
+        //the documents and their modification times when the values were collected, or null if any is unknown
+        private String version;
+
+        /**
+         * The distinct names or values one document's path found, in order, with the line of each one's first node,
+         * or what went wrong. When a value comes again, the first time it does is kept: after how many distinct
+         * values, the value and its line. The values are the Objects the parser made until the group is built, then
+         * kept in a ValueSet if the group is compact or has an index, and otherwise dropped, leaving the group's
+         * HashSet the only copy.
+         */
+        private static final class Contribution {
+            final long modified;
+            Set<Object> values = new LinkedHashSet<>();
+            int[] lines = new int[16];
+            int duplicateAfter = -1;
+            Object duplicate;
+            int duplicateLine;
+            RuntimeException error;
+            //the false positive rate values was last filtered with, once it is a ValueSet a group may have handed out
+            double filtered = -1;
+
+            Contribution(long modified) {
+                this.modified = modified;
+            }
+
+            //the values as a ValueSet, filtered with the rate if it is not 0
+            ValueSet retain(double falsePositiveRate) {
+                if (!(values instanceof ValueSet) || (filtered >= 0 && filtered != falsePositiveRate)) {
+                    //a set already handed out is not changed under its readers
+                    ValueSet v = new ValueSet();
+                    v.addAll(values);
+                    values = v;
+                    filtered = -1;
+                }
+                if (filtered != falsePositiveRate && falsePositiveRate > 0) {
+                    ((ValueSet) values).filter(falsePositiveRate);
+                }
+                filtered = falsePositiveRate;
+                return (ValueSet) values;
+            }
+
+            //the values to write to the index, or null if they cannot be
+            ValueSet writable() {
+                if (error != null || modified == UNKNOWN) {
+                    return null;
+                }
+                ValueSet d = new ValueSet();
+                d.add(duplicate);
+                if (duplicateAfter >= 0 && !d.writable()) {
+                    return null;
+                }
+                ValueSet v = values instanceof ValueSet ? (ValueSet) values : new ValueSet();
+                if (v != values) {
+                    v.addAll(values);
+                }
+                return v.writable() ? v : null;
+            }
+        }
+
+        /**
+         * The values of a compact group: a lookup in each document's ValueSet in turn, rather than a copy of them all.
+         * The documents' Bloom filters each have the group's false positive rate.
+         */
+        private static final class Union extends AbstractSet<Object> {
+            final List<ValueSet> parts;
+            final int size;
+            //whether no value is in two parts, so iterating need not skip those seen before
+            final boolean distinct;
+
+            Union(List<ValueSet> parts, int size, boolean distinct) {
+                this.parts = parts;
+                this.size = size;
+                this.distinct = distinct;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object value) {
+                return ValueSet.anyContains(parts, value);
+            }
+
+            @Override
+            public Iterator<Object> iterator() {
+                return new Iterator<Object>() {
+                    int part, i;
+                    Object next;
+                    boolean ready;
+
+                    @Override
+                    public boolean hasNext() {
+                        while (!ready && part < parts.size()) {
+                            if (i == parts.get(part).size()) {
+                                part++;
+                                i = 0;
+                                continue;
+                            }
+                            next = parts.get(part).get(i++);
+                            ready = distinct || !ValueSet.anyContains(parts.subList(0, part), next);
+                        }
+                        return ready;
+                    }
+
+                    @Override
+                    public Object next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        ready = false;
+                        return next;
+                    }
+                };
+            }
+        }
+
+        synchronized Set<Object> eval(@SuppressWarnings("SameParameterValue") boolean unique, ParserBase parser) {
+            if (!path.equals(cachedPath)) {
+                cachedPath = new ArrayList<>(path);
+                cache.clear();
+                values = null;
+            }
+            if (index != null && cache.isEmpty() && index.exists()) {
+                load();
+            }
+            boolean changed = false;
+            List<String> stale = new ArrayList<>();
+            Map<String, Long> modified = new HashMap<>();
+            StringBuilder version = new StringBuilder();
+            for (String document : documents) {
+                long m = lastModified(parser, document);
+                version = version == null || m == UNKNOWN ? null : version.append(document).append('\0').append(m).append('\n');
+                Contribution c = cache.get(document);
+                boolean outdated = c == null || m == UNKNOWN || c.modified != m || c.error != null;
+                changed |= outdated;
+                //the values of a document not kept are read again whenever the group is built
+                if ((outdated || c.values == null) && modified.put(document, m) == null) {
+                    stale.add(document);
+                }
+            }
+            cache.keySet().retainAll(documents);
+            this.version = version == null ? null : version.toString();
+            if (!changed && values != null && documents.equals(valuesDocuments) && valuesUnique == unique
+                    && valuesCompact == compact && valuesRate == falsePositiveRate) {
+                return values;
+            }
+            List<String> finalPath = cachedPath;
+            List<Contribution> read = stream(stale, parser)
+                    .map(document -> read(parser, document, finalPath, modified.get(document)))
+                    .collect(Collectors.toList());
+            for (int i = 0; i < stale.size(); i++) {
+                cache.put(stale.get(i), read.get(i));
+            }
+            if (index != null && !stale.isEmpty()) {
+                save();
+            }
+            values = null;
+            boolean names = "nodeName".equals(finalPath.get(finalPath.size() - 1));
+            Set<Object> result;
+            try {
+                result = compact ? union(unique, names) : merge(unique, names);
+            } finally {
+                for (String document : documents) {
+                    Contribution c = cache.get(document);
+                    if (c.values != null && !compact) {
+                        if (index != null) {
+                            c.retain(0);
+                        } else {
+                            c.values = null;
+                        }
+                    }
+                }
+            }
+            values = Collections.unmodifiableSet(result);
+            valuesDocuments = new ArrayList<>(documents);
+            valuesUnique = unique;
+            valuesCompact = compact;
+            valuesRate = falsePositiveRate;
+            return values;
+        }
 
-        Set<Object> eval(@SuppressWarnings("SameParameterValue") boolean unique, ParserBase parser) {
-            Collector colly = new Collector();
+        //the values of the documents in one HashSet, in document order, as collectValues would have met them
+        private Set<Object> merge(boolean unique, boolean names) {
+            int expected = 0;
             for (String document : documents) {
-                try {
-                    final Node doc = parser.parse(document);
-                    walkTree(unique, colly, doc, path);
+                Contribution c = cache.get(document);
+                expected += c.error == null ? c.values.size() : 0;
+            }
+            Set<Object> result = new HashSet<>(expected * 4 / 3 + 1);
+            for (String document : documents) {
+                Contribution c = cache.get(document);
+                if (c.error != null) {
+                    throw c.error;
+                }
+                int i = 0;
+                for (Object value : c.values) {
+                    if (unique && i == c.duplicateAfter) {
+                        throw notUnique(names, c.duplicate, c.duplicateLine);
+                    }
+                    if (!result.add(value) && unique) {
+                        throw notUnique(names, value, c.lines[i]);
+                    }
+                    i++;
+                }
+                if (unique && i == c.duplicateAfter) {
+                    throw notUnique(names, c.duplicate, c.duplicateLine);
+                }
+            }
+            return result;
+        }
 
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+        //the values of the documents as a Union of their ValueSets, checked in the same order as merge
+        private Set<Object> union(boolean unique, boolean names) {
+            List<ValueSet> parts = new ArrayList<>();
+            int size = 0;
+            boolean distinct = true;
+            for (String document : documents) {
+                Contribution c = cache.get(document);
+                if (c.error != null) {
+                    throw c.error;
                 }
+                ValueSet part = c.retain(falsePositiveRate);
+                for (int i = 0; i <= part.size(); i++) {
+                    if (unique && i == c.duplicateAfter) {
+                        throw notUnique(names, c.duplicate, c.duplicateLine);
+                    }
+                    if (i < part.size()) {
+                        Object value = part.get(i);
+                        if (!ValueSet.anyContains(parts, value)) {
+                            size++;
+                        } else if (unique) {
+                            throw notUnique(names, value, c.lines[i]);
+                        } else {
+                            distinct = false;
+                        }
+                    }
+                }
+                parts.add(part);
             }
-            return colly.result;
+            return new Union(parts, size, distinct);
+        }
+
+        /**
+         * The documents and their modification times as of the last eval, or null if it read any whose time is
+         * unknown, so that results derived from the values can be kept while this is the same.
+         */
+        synchronized String version() {
+            return version;
         }
 
+        //the contributions of the index, if it was written for the same path
+        private void load() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+                if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                    throw new IOException("Not a document group index");
+                }
+                List<String> indexedPath = new ArrayList<>();
+                for (int i = in.readInt(); i > 0; i--) {
+                    indexedPath.add(readString(in));
+                }
+                if (!indexedPath.equals(cachedPath)) {
+                    return;
+                }
+                for (int i = in.readInt(); i > 0; i--) {
+                    String document = readString(in);
+                    Contribution c = new Contribution(in.readLong());
+                    c.values = ValueSet.read(in);
+                    c.lines = new int[Math.max(1, c.values.size())];
+                    for (int j = 0; j < c.values.size(); j++) {
+                        c.lines[j] = in.readInt();
+                    }
+                    c.duplicateAfter = in.readInt();
+                    if (c.duplicateAfter >= 0) {
+                        c.duplicate = ValueSet.read(in).get(0);
+                        c.duplicateLine = in.readInt();
+                    }
+                    cache.put(document, c);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warning("Ignoring document group index " + index + ": " + e);
+                cache.clear();
+            }
+        }
+
+        //the contributions that can be written: not failed, of known time, and of the parser's types
+        private void save() {
+            writeIndex(index, out -> {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(cachedPath.size());
+                for (String step : cachedPath) {
+                    writeString(out, step);
+                }
+                Map<String, ValueSet> writable = new LinkedHashMap<>();
+                for (Map.Entry<String, Contribution> entry : cache.entrySet()) {
+                    ValueSet values = entry.getValue().writable();
+                    if (values != null) {
+                        writable.put(entry.getKey(), values);
+                    }
+                }
+                out.writeInt(writable.size());
+                for (Map.Entry<String, ValueSet> entry : writable.entrySet()) {
+                    Contribution c = cache.get(entry.getKey());
+                    writeString(out, entry.getKey());
+                    out.writeLong(c.modified);
+                    entry.getValue().write(out);
+                    for (int j = 0; j < c.values.size(); j++) {
+                        out.writeInt(c.lines[j]);
+                    }
+                    out.writeInt(c.duplicateAfter);
+                    if (c.duplicateAfter >= 0) {
+                        ValueSet duplicate = new ValueSet();
+                        duplicate.add(c.duplicate);
+                        duplicate.write(out);
+                        out.writeInt(c.duplicateLine);
+                    }
+                }
+            });
+        }
+
+        private static RuntimeException notUnique(boolean names, Object value, int line) {
+            return new RuntimeException(names
+                    ? "L0001: Node name not unique: " + value + " at line " + line
+                    : "L0002: Node value not unique: " + value + " at line " + line);
+        }
+
+        private static Contribution read(ParserBase parser, String document, List<String> path, long modified) {
+            Contribution c = new Contribution(modified);
+            try {
+                final Node doc = parser.parse(document);
+                walkTree(false, (unique, found, finalStep) -> {
+                    boolean names = "nodeName".equals(finalStep);
+                    if (!names && !"nodeValue".equals(finalStep)) {
+                        throw new RuntimeException("Final step in path must be nodeName or nodeValue.");
+                    }
+                    for (Node node : found) {
+                        Object value = names ? node.name : node.getValue();
+                        if (c.values.add(value)) {
+                            if (c.values.size() > c.lines.length) {
+                                c.lines = Arrays.copyOf(c.lines, c.lines.length * 2);
+                            }
+                            c.lines[c.values.size() - 1] = node.line;
+                        } else if (c.duplicateAfter < 0) {
+                            c.duplicateAfter = c.values.size();
+                            c.duplicate = value;
+                            c.duplicateLine = node.line;
+                        }
+                    }
+                }, doc, path);
+            } catch (IOException e) {
+                c.error = new RuntimeException(e);
+            } catch (RuntimeException e) {
+                c.error = e;
+            }
+            return c;
+        }
     }
 
-}
\ No newline at end of file
+}
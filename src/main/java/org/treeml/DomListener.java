@@ -1,6 +1,7 @@
 package org.treeml;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -8,9 +9,11 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class DomListener implements Listener {
 
     private RootNode root;
-    private Node currentNode;
+    Node currentNode;
     private AtomicBoolean running = new AtomicBoolean(false);
-    private boolean valueSet;
+    boolean valueSet;
+    //the last node added at each depth, whose next children go to it
+    private Node[] open = new Node[16];
 
     @SuppressWarnings("unused")
     public RootNode getDocument() {
@@ -23,6 +26,7 @@ public class DomListener implements Listener {
             throw new IllegalStateException("Listener can only handle one document at a time. Create one parser and DomListener for each document.");
         }
         root = new RootNode();
+        Arrays.fill(open, null);
     }
 
     @Override
@@ -37,7 +41,14 @@ public class DomListener implements Listener {
 
     @Override
     public void onAddNode(int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
-        root.append(indent, currentNode);
+        if (currentNode != null) {
+            Node parent = indent == 0 ? root : open[indent - 1];
+            parent.addChild(currentNode);
+            if (indent == open.length) {
+                open = Arrays.copyOf(open, open.length * 2);
+            }
+            open[indent] = currentNode;
+        }
         currentNode = null;
         valueSet = false;
     }
@@ -45,19 +56,62 @@ public class DomListener implements Listener {
     @Override
     public void onAddValue(Object value, Parser2.Types type, int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
         valueSet = true;
-        if (currentNode.value != null && currentNode.value instanceof List<?>) {
-            //noinspection unchecked
-            ((List<Object>) currentNode.value).add(value);
+        if (currentNode.value instanceof List<?>) {
+            add(value);
         } else {
             currentNode.value = value;
         }
     }
 
+    @Override
+    public void onAddLong(long value, int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+        if (currentNode.value instanceof LongList) {
+            ((LongList) currentNode.value).add(value);
+        } else if (isEmptyList(currentNode.value)) {
+            LongList list = new LongList();
+            list.add(value);
+            currentNode.value = list;
+        } else {
+            onAddValue(value, Parser2.Types.longValue, indent, index, line, lineIndex, currentGroup);
+        }
+    }
+
+    @Override
+    public void onAddDouble(double value, int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+        if (currentNode.value instanceof DoubleList) {
+            ((DoubleList) currentNode.value).add(value);
+        } else if (isEmptyList(currentNode.value)) {
+            DoubleList list = new DoubleList();
+            list.add(value);
+            currentNode.value = list;
+        } else {
+            onAddValue(value, Parser2.Types.doubleValue, indent, index, line, lineIndex, currentGroup);
+        }
+    }
+
+    //adds to the list value, which stops being a LongList or DoubleList once its items are mixed
+    private void add(Object value) {
+        Object list = currentNode.value;
+        if ((list instanceof LongList && !(value instanceof Long)) || (list instanceof DoubleList && !(value instanceof Double))) {
+            list = currentNode.value = new ArrayList<Object>((List<?>) list);
+        }
+        //noinspection unchecked
+        ((List<Object>) list).add(value);
+    }
+
+    private boolean isEmptyList(Object value) {
+        return value instanceof ArrayList<?> && ((ArrayList<?>) value).isEmpty();
+    }
+
     @Override
     public void onDeclareList(int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
         //noinspection StatementWithEmptyBody
-        if (currentNode.value != null && currentNode.value instanceof List<?>) {
+        if (currentNode.value instanceof List<?>) {
             //do nothing
+        } else if (currentNode.value instanceof Long) {
+            currentNode.value = new LongList((Long) currentNode.value);
+        } else if (currentNode.value instanceof Double) {
+            currentNode.value = new DoubleList((Double) currentNode.value);
         } else {
             List<Object> list = new ArrayList<>();
             if (valueSet) {
@@ -69,7 +123,11 @@ public class DomListener implements Listener {
 
     @Override
     public void onNodeName(String name, int indent, int index, int lineNumber, int lineIndex, Parser2.Group name1) {
-        currentNode = new Node(name, null);
+        currentNode = newNode(name);
         currentNode.line = lineNumber;
     }
+
+    Node newNode(String name) {
+        return new Node(name, null);
+    }
 }
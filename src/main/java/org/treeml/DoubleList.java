@@ -0,0 +1,95 @@
+package org.treeml;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A list of doubles held in a double[], which the DOM uses for a list value whose items are all decimals.
+ * It equals any List of the same Doubles, and the primitive methods read and add without boxing.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class DoubleList extends AbstractList<Double> implements RandomAccess {
+
+    private double[] values;
+    private int size;
+
+    public DoubleList() {
+        values = new double[8];
+    }
+
+    public DoubleList(double... values) {
+        this.values = values.clone();
+        this.size = values.length;
+    }
+
+    public double getDouble(int index) {
+        LongList.check(index, size);
+        return values[index];
+    }
+
+    public void add(double value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2 + 1);
+        }
+        values[size++] = value;
+    }
+
+    public double[] toDoubleArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public Double get(int index) {
+        return getDouble(index);
+    }
+
+    @Override
+    public Double set(int index, Double value) {
+        double old = getDouble(index);
+        values[index] = value;
+        return old;
+    }
+
+    @Override
+    public void add(int index, Double value) {
+        LongList.check(index, size + 1);
+        add(0.0);
+        System.arraycopy(values, index, values, index + 1, size - 1 - index);
+        values[index] = value;
+        modCount++;
+    }
+
+    @Override
+    public Double remove(int index) {
+        double old = getDouble(index);
+        System.arraycopy(values, index + 1, values, index, size - 1 - index);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (o instanceof Double) {
+            //as Double.equals compares them
+            long bits = Double.doubleToLongBits((Double) o);
+            for (int i = 0; i < size; i++) {
+                if (Double.doubleToLongBits(values[i]) == bits) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+}
@@ -6,4 +6,14 @@ public class Duration {
     Duration(String value) {
         this.value = value;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Duration && value.equals(((Duration) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
 }
@@ -4,78 +4,45 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @SuppressWarnings("WeakerAccess")
 public class Expression {
 
+    static final int CACHE_SIZE = 1024;
+    /**
+     * Compiled expressions by their text. Lookups take no lock; when it is full the cache is emptied rather than
+     * tracking which entry was used least recently, so a program with few expressions never loses them.
+     */
+    private static final Map<String, CompiledExpression> CACHE = new ConcurrentHashMap<>();
+
     public static Object eval(Node node, String expression) {
         //token[1].token[1].*[:"a value"]()
-        try {
-            Object x = getLiteral(expression, false);
-            if (x != null) return x;
-            String[] functionSplit = expression.split("\\(");
-            String function = functionSplit.length == 2 ? '(' + functionSplit[1] : null;
-            String[] steps = functionSplit[0].split("\\.");
-            for (String step : steps) {
-                Node nextNode = null;
-                ParsedStep parsedStep = new ParsedStep(step).invoke();
-                Integer index = parsedStep.getIndex();
-                Object testValue = parsedStep.getTestValue();
-                boolean hasTestValue = parsedStep.hasTestValue();
-                String nodeName = parsedStep.getNodeName();
+        return compile(expression).eval(node);
+    }
 
-                int currentIndex = 0;
-                for (Node child : node.children) {
-                    if (nodeName.equals("*") || nodeName.equals(child.name)) {
-                        if ((index == null && !hasTestValue) || (index != null && index == currentIndex) || matches(child.value, testValue, hasTestValue)) {
-                            nextNode = child;
-                            break;
-                        } else {
-                            currentIndex++;
-                        }
-                    }
-                }
-                if (nextNode != null) {
-                    node = nextNode;
-                } else {
-                    return null;
-                }
-            }
-            try {
-                if (function == null) {
-                    return node.value;
-                } else if ("()".equals(function)) {
-                    return node.value;
-                } else if ("(name)".equals(function)) {
-                    return node.name;
-                } else if ("(integer)".equals(function)) {
-                    return node.value instanceof Long;
-                } else if ("(double)".equals(function)) {
-                    return node.value instanceof Double;
-                } else if ("(string)".equals(function)) {
-                    return node.value instanceof String;
-                } else if ("(boolean)".equals(function)) {
-                    return node.value instanceof Boolean;
-                } else if ("(list)".equals(function)) {
-                    return node.value instanceof List<?>;
-                } else if ("(listSize)".equals(function)) {
-                    return (long)((List<?>)node.value).size();
-                } else if (function.matches("\\([0-9]+\\)")) {
-                    if (! (node.value instanceof List<?>) ) {
-                        throw new RuntimeException("List function used on non-list value: " + node.value);
-                    }
-                    return ((List<?>)node.value).get(Integer.parseInt(function.replaceAll("\\(?\\)?", "")));
-                }
-            } catch (NumberFormatException e) {
-                throw new RuntimeException("Could not evaluate function: " + function, e);
-            }
+    /**
+     * The expression parsed for evaluating against any number of nodes, from a cache of recently compiled ones.
+     */
+    public static CompiledExpression compile(String expression) {
+        CompiledExpression compiled = CACHE.get(expression);
+        if (compiled != null) {
+            return compiled;
+        }
+        try {
+            compiled = new CompiledExpression(expression);
         } catch (RuntimeException e) {
             throw new RuntimeException("Syntax error: " + expression, e);
         }
-        return null;
+        if (CACHE.size() >= CACHE_SIZE) {
+            CACHE.clear();
+        }
+        CACHE.put(expression, compiled);
+        return compiled;
     }
 
-    private static boolean matches(Object value, Object testValue, boolean hasTestValue) {
+    static boolean matches(Object value, Object testValue, boolean hasTestValue) {
         if ( ! hasTestValue) {
             return false;
         }
@@ -85,7 +52,7 @@ public class Expression {
         return testValue == null ? value == null : testValue.equals(value);
     }
 
-    private static Object getLiteral(String expression, boolean knownToBeLiteral) {
+    static Object getLiteral(String expression, boolean knownToBeLiteral) {
         try {
             if ("null".equals(expression)) {
                 return null;
@@ -115,58 +82,6 @@ public class Expression {
         return null;
     }
 
-    @SuppressWarnings("WeakerAccess")
-    private static class ParsedStep {
-        private String step;
-        private Integer index;
-        private Object testValue;
-        private String nodeName;
-        private boolean hasTestValue;
-
-        public ParsedStep(String step) {
-            this.step = step;
-        }
-
-        public Integer getIndex() {
-            return index;
-        }
-
-        public Object getTestValue() {
-            return testValue;
-        }
-
-        public String getNodeName() {
-            return nodeName;
-        }
-
-        public ParsedStep invoke() {
-            String[] predicateSplit = step.split("\\[");
-            String predicate = predicateSplit.length == 2 ? predicateSplit[1] : null;
-            index = null;
-            testValue = null;
-            if (predicate != null) {
-                if (predicate.endsWith("]")) {
-                    predicate = predicate.substring(0, predicate.length() - 1);
-                } else {
-                    throw new RuntimeException("Unclosed predicate.");
-                }
-                hasTestValue = predicate.startsWith(":");
-                index = !hasTestValue ? Integer.parseInt(predicate) : null;
-                testValue = hasTestValue ? getLiteral(predicate.substring(1), true) : null;
-
-            }
-            if (predicateSplit.length > 2) {
-                throw new RuntimeException("Multiple predicates forbidden.");
-            }
-            nodeName = predicateSplit[0];
-            return this;
-        }
-
-        public boolean hasTestValue() {
-            return hasTestValue;
-        }
-    }
-
     public static void main(String[] args) throws IOException {
         Parser2 parser = new Parser2(new Parser2.Options(false, false, false, false), Collections.emptyList());
         Node doc = parser.parse(new File("C:\\Users\\agnes.clarke\\Desktop\\mongouni\\lesson4\\blog\\untitled\\src\\org\\org.treeml\\test\\simple3.tree"));
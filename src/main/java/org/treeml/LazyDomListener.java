@@ -0,0 +1,68 @@
+package org.treeml;
+
+/**
+ * Builds the DOM of Parser2.parseLazy. A value that is still a span of the source is left there, in its LazyNode,
+ * and decoded on first use; list items, and values the lexer had to copy out of the source, are decoded as they come.
+ * The lexer builds no values for it, as it takes them as spans rather than as Listener events.
+ */
+final class LazyDomListener extends DomListener implements SpanListener {
+
+    @Override
+    public int events() {
+        return TAG | NODE_NAME | LIST | NODE;
+    }
+
+    @Override
+    Node newNode(String name) {
+        return new LazyNode(name);
+    }
+
+    @Override
+    public void onTagSpan(Parser2.State state) {
+    }
+
+    @Override
+    public void onNameSpan(Parser2.State state) {
+    }
+
+    @Override
+    public void onValueSpan(Parser2.State state, Parser2.Group group) {
+        int indent = state.indent, index = state.index, line = state.lineNumber, lineIndex = state.lineIndex;
+        if (group instanceof Parser2.BeforeValue) {
+            onAddValue(null, null, indent, index, line, lineIndex, group);
+            return;
+        }
+        if (!valueSet && currentNode.value == null && state.mark >= 0) {
+            ((LazyNode) currentNode).defer(state.window, state.mark, state.length(), state.type);
+            valueSet = true;
+            return;
+        }
+        char[] chars = new char[state.length()];
+        state.getChars(chars, 0);
+        Object value = Parser2.decode(state.type, chars, 0, chars.length);
+        if (value instanceof Long) {
+            onAddLong((Long) value, indent, index, line, lineIndex, group);
+        } else if (value instanceof Double) {
+            onAddDouble((Double) value, indent, index, line, lineIndex, group);
+        } else {
+            onAddValue(value, state.type, indent, index, line, lineIndex, group);
+        }
+    }
+
+    @Override
+    public void onAddValue(Object value, Parser2.Types type, int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+        //a value after the first replaces it, as it does in a DOM; onAddLong and onAddDouble come here too unless
+        //the value is already a list, which onDeclareList decoded
+        if (currentNode instanceof LazyNode) {
+            ((LazyNode) currentNode).cancel();
+        }
+        super.onAddValue(value, type, indent, index, line, lineIndex, currentGroup);
+    }
+
+    @Override
+    public void onDeclareList(int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+        //the first item may still be a span
+        currentNode.getValue();
+        super.onDeclareList(indent, index, line, lineIndex, currentGroup);
+    }
+}
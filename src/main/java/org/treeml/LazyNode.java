@@ -0,0 +1,46 @@
+package org.treeml;
+
+/**
+ * A node of a lazy parse, whose value stays a span of the source until getValue first reads it.
+ */
+final class LazyNode extends Node {
+
+    //the document, while the value is still to be decoded
+    private char[] source;
+    private int offset, length;
+    private Parser2.Types type;
+    private volatile boolean decoded = true;
+
+    LazyNode(String name) {
+        super(name, null);
+    }
+
+    void defer(char[] source, int offset, int length, Parser2.Types type) {
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.type = type;
+        decoded = false;
+    }
+
+    //for a later value of the node, which replaces the one deferred
+    void cancel() {
+        source = null;
+        decoded = true;
+    }
+
+    @Override
+    public Object getValue() {
+        if (!decoded) {
+            //nodes are read from several threads by parallel validation
+            synchronized (this) {
+                if (!decoded) {
+                    value = Parser2.decode(type, source, offset, length);
+                    source = null;
+                    decoded = true;
+                }
+            }
+        }
+        return value;
+    }
+}
@@ -2,6 +2,21 @@ package org.treeml;
 
 public interface Listener {
 
+    /**
+     * Event flags for events().
+     */
+    int CHARACTER = 1, TAG = 1 << 1, NODE_NAME = 1 << 2, VALUE = 1 << 3, LIST = 1 << 4, NODE = 1 << 5,
+            ALL = CHARACTER | TAG | NODE_NAME | VALUE | LIST | NODE;
+
+    /**
+     * The events the parser should send this listener, checked once per parse. onStart and onEnd are always sent.
+     * By default these are the events whose methods the listener overrides; a listener that overrides methods
+     * it does not always need can narrow the mask.
+     */
+    default int events() {
+        return Listeners.overridden(this);
+    }
+
     default void onStart() {
     }
 
@@ -20,6 +35,20 @@ public interface Listener {
     default void onAddValue(Object value, Parser2.Types type, int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
     }
 
+    /**
+     * An integer value, which a listener that stores it can keep without boxing. By default it goes to onAddValue.
+     */
+    default void onAddLong(long value, int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+        onAddValue(value, Parser2.Types.longValue, indent, index, line, lineIndex, currentGroup);
+    }
+
+    /**
+     * A decimal value, as onAddLong.
+     */
+    default void onAddDouble(double value, int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+        onAddValue(value, Parser2.Types.doubleValue, indent, index, line, lineIndex, currentGroup);
+    }
+
     default void onDeclareList(int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
     }
 
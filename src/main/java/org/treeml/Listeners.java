@@ -0,0 +1,87 @@
+package org.treeml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The listeners of one parse, sorted by the events they take. The parser only calls a listener
+ * for the events in its mask, and skips building arguments for events nobody takes, so
+ * a parse without a character listener does no per-character listener work at all.
+ */
+final class Listeners {
+
+    private static final ClassValue<Integer> OVERRIDDEN = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            int events = 0;
+            if (overrides(type, "onCharacter", char.class, int.class, int.class, int.class, int.class, Parser2.Group.class)) {
+                events |= Listener.CHARACTER;
+            }
+            if (overrides(type, "onTag", String.class, int.class, int.class, int.class, Parser2.Group.class)) {
+                events |= Listener.TAG;
+            }
+            if (overrides(type, "onNodeName", String.class, int.class, int.class, int.class, int.class, Parser2.Group.class)) {
+                events |= Listener.NODE_NAME;
+            }
+            if (overrides(type, "onAddValue", Object.class, Parser2.Types.class, int.class, int.class, int.class, int.class, Parser2.Group.class)
+                    || overrides(type, "onAddLong", long.class, int.class, int.class, int.class, int.class, Parser2.Group.class)
+                    || overrides(type, "onAddDouble", double.class, int.class, int.class, int.class, int.class, Parser2.Group.class)) {
+                events |= Listener.VALUE;
+            }
+            if (overrides(type, "onDeclareList", int.class, int.class, int.class, int.class, Parser2.Group.class)) {
+                events |= Listener.LIST;
+            }
+            if (overrides(type, "onAddNode", int.class, int.class, int.class, int.class, Parser2.Group.class)) {
+                events |= Listener.NODE;
+            }
+            return events;
+        }
+    };
+
+    final Listener[] all;
+    final Listener[] characters;
+    final Listener[] tags;
+    final Listener[] names;
+    final Listener[] values;
+    final Listener[] lists;
+    final Listener[] nodes;
+
+    Listeners(List<Listener> listeners) {
+        all = listeners.toArray(new Listener[0]);
+        int[] masks = new int[all.length];
+        for (int i = 0; i < all.length; i++) {
+            masks[i] = all[i].events();
+        }
+        characters = select(masks, Listener.CHARACTER);
+        tags = select(masks, Listener.TAG);
+        names = select(masks, Listener.NODE_NAME);
+        values = select(masks, Listener.VALUE);
+        lists = select(masks, Listener.LIST);
+        nodes = select(masks, Listener.NODE);
+    }
+
+    private Listener[] select(int[] masks, int event) {
+        List<Listener> selected = new ArrayList<>(all.length);
+        for (int i = 0; i < all.length; i++) {
+            if ((masks[i] & event) != 0) {
+                selected.add(all[i]);
+            }
+        }
+        return selected.toArray(new Listener[0]);
+    }
+
+    /**
+     * The events whose methods the listener's class overrides.
+     */
+    static int overridden(Listener listener) {
+        return OVERRIDDEN.get(listener.getClass());
+    }
+
+    private static boolean overrides(Class<?> type, String name, Class<?>... parameters) {
+        try {
+            return type.getMethod(name, parameters).getDeclaringClass() != Listener.class;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
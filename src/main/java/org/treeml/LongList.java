@@ -0,0 +1,100 @@
+package org.treeml;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A list of longs held in a long[], which the DOM uses for a list value whose items are all integers.
+ * It equals any List of the same Longs, and the primitive methods read and add without boxing.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class LongList extends AbstractList<Long> implements RandomAccess {
+
+    private long[] values;
+    private int size;
+
+    public LongList() {
+        values = new long[8];
+    }
+
+    public LongList(long... values) {
+        this.values = values.clone();
+        this.size = values.length;
+    }
+
+    public long getLong(int index) {
+        check(index, size);
+        return values[index];
+    }
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2 + 1);
+        }
+        values[size++] = value;
+    }
+
+    public long[] toLongArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public Long get(int index) {
+        return getLong(index);
+    }
+
+    @Override
+    public Long set(int index, Long value) {
+        long old = getLong(index);
+        values[index] = value;
+        return old;
+    }
+
+    @Override
+    public void add(int index, Long value) {
+        check(index, size + 1);
+        add(0L);
+        System.arraycopy(values, index, values, index + 1, size - 1 - index);
+        values[index] = value;
+        modCount++;
+    }
+
+    @Override
+    public Long remove(int index) {
+        long old = getLong(index);
+        System.arraycopy(values, index + 1, values, index, size - 1 - index);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (o instanceof Long) {
+            long value = (Long) o;
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    static void check(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index: %s, Size: %s", index, size));
+        }
+    }
+}
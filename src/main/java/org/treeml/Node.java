@@ -16,14 +16,190 @@ public class Node {
     public Node parent;
     public Node previous;
     public Node next;
-    public List<Node> children = new ArrayList<>();
+    public List<Node> children = new Children();
     public int line;
+    //built on the first lookup by name among many children
+    private volatile ChildIndex childIndex;
 
     public Node(String name, Object value) {
         this.name = name;
         this.value = value;
     }
 
+    /**
+     * The list of children of a new node. ArrayList counts adding and removing children, and this counts
+     * setting one too, so that an index of them knows when it is out of date.
+     */
+    static final class Children extends ArrayList<Node> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Node set(int index, Node element) {
+            modCount++;
+            return super.set(index, element);
+        }
+
+        int changes() {
+            return modCount;
+        }
+    }
+
+    /**
+     * The value. A node of Parser2.parseLazy decodes it here on first use, so read it through this
+     * rather than the field when the DOM may be lazy.
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * Adds the child after the existing children, linking its parent, previous and next.
+     */
+    public void addChild(Node child) {
+        if (children.size() > 0) {
+            Node lastChild = children.get(children.size() - 1);
+            lastChild.next = child;
+            child.previous = lastChild;
+        }
+        child.parent = this;
+        children.add(child);
+    }
+
+    /**
+     * The first child with the name, or null.
+     * <p>
+     * This and the other lookups by name use an index of the children of a node with many of them, kept up to
+     * date as the children list changes. Giving a child a new name or value does not change the list, so call
+     * reindex after doing so, or a child renamed to the name or given the value may not be found.
+     */
+    public Node child(String name) {
+        return child(name, 0);
+    }
+
+    /**
+     * The nth child with the name, counting from 0, or null. See child(String) about renaming children.
+     */
+    public Node child(String name, int n) {
+        if (n < 0) {
+            return null;
+        }
+        ChildIndex index = childIndex();
+        if (index != null) {
+            int[] positions = index.positions(name);
+            if (n >= positions.length) {
+                return null;
+            }
+            if (index.named(name, positions, n)) {
+                return children.get(positions[n]);
+            }
+            //a child was renamed since
+            childIndex = null;
+        }
+        for (Node child : children) {
+            if (name.equals(child.name) && n-- == 0) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The children with the name, in order. See child(String) about renaming children.
+     */
+    public List<Node> children(String name) {
+        List<Node> result = new ArrayList<>();
+        ChildIndex index = childIndex();
+        if (index != null) {
+            int[] positions = index.positions(name);
+            if (positions.length == 0 || index.named(name, positions, positions.length - 1)) {
+                for (int i : positions) {
+                    result.add(children.get(i));
+                }
+                return result;
+            }
+            childIndex = null;
+        }
+        for (Node child : children) {
+            if (name.equals(child.name)) {
+                result.add(child);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The first child with the name whose value equals the value, or is a list containing it, or null.
+     * See child(String) about renaming children, which applies to changing their values too.
+     */
+    public Node childWithValue(String name, Object value) {
+        ChildIndex index = childIndex();
+        if (index != null) {
+            int i = index.first(name, value);
+            if (i < 0) {
+                return null;
+            }
+            Node child = children.get(i);
+            if (name.equals(child.name) && Expression.matches(child.getValue(), value, true)) {
+                return child;
+            }
+            //the child was renamed or given another value since
+            childIndex = null;
+        }
+        for (Node child : children) {
+            if (name.equals(child.name) && Expression.matches(child.getValue(), value, true)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops the index of the children, for after children have been renamed or given new values.
+     */
+    public void reindex() {
+        childIndex = null;
+    }
+
+    //the index of the children, if there are enough of them to need one
+    private ChildIndex childIndex() {
+        List<Node> children = this.children;
+        if (children.size() < ChildIndex.MIN_CHILDREN) {
+            return null;
+        }
+        ChildIndex index = childIndex;
+        if (index == null || !index.isOf(children)) {
+            index = childIndex = new ChildIndex(children);
+        }
+        return index;
+    }
+
+    /**
+     * The value, which must be an integer, without boxing it again.
+     */
+    public long getLong() {
+        Object value = getValue();
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        throw new IllegalStateException(String.format("Value of %s is not an integer {line: %s}", name, line));
+    }
+
+    public double getDouble() {
+        Object value = getValue();
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        throw new IllegalStateException(String.format("Value of %s is not a decimal {line: %s}", name, line));
+    }
+
+    public boolean getBoolean() {
+        Object value = getValue();
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        throw new IllegalStateException(String.format("Value of %s is not a boolean {line: %s}", name, line));
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
         toStringHelper(sb, this, "");
@@ -31,7 +207,7 @@ public class Node {
     }
 
     private void toStringHelper(StringBuilder sb, Node node, String indent) {
-        sb.append(indent).append(node.name).append("---").append(node.value).append("\r\n");
+        sb.append(indent).append(node.name).append("---").append(node.getValue()).append("\r\n");
         for (Node child : node.children) {
             toStringHelper(sb, child, indent + "  ");
         }
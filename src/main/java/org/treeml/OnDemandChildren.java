@@ -0,0 +1,172 @@
+package org.treeml;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.RandomAccess;
+
+/**
+ * The top-level nodes of Parser2.parseOnDemand. A first pass lexes the whole document, building nothing but the
+ * offset and line where each top-level node starts; get(i) then parses just the text of node i and its subtree,
+ * once, so a caller that reads one entry of a large document pays for that entry alone.
+ * <p>
+ * Syntax errors anywhere in the document are thrown by the first pass. The list cannot be changed.
+ */
+final class OnDemandChildren extends AbstractList<Node> implements RandomAccess {
+
+    private final RootNode root;
+    private final char[] source;
+    private final boolean curlySyntax;
+    private final SymbolTable symbols;
+    private final int[] starts;
+    private final int[] lines;
+    private final String[] names;
+    private final Node[] nodes;
+
+    private OnDemandChildren(RootNode root, char[] source, boolean curlySyntax, SymbolTable symbols, int[] starts, int[] lines, String[] names) {
+        this.root = root;
+        this.source = source;
+        this.curlySyntax = curlySyntax;
+        this.symbols = symbols;
+        this.starts = starts;
+        this.lines = lines;
+        this.names = names;
+        this.nodes = new Node[starts.length];
+    }
+
+    static RootNode parse(char[] source, SymbolTable symbols) {
+        RootNode root = new RootNode();
+        Index index = new Index(root);
+        Parser2.State state = new Parser2.State(Collections.singletonList(index));
+        state.spans = index;
+        state.symbols = symbols;
+        Parser2.end(Parser2.lex(source, 0, source.length, Parser2.Prolog.I, state), state);
+        root.children = new OnDemandChildren(root, source, state.curlySyntax, symbols,
+                Arrays.copyOf(index.starts, index.size), Arrays.copyOf(index.lines, index.size), Arrays.copyOf(index.names, index.size));
+        return root;
+    }
+
+    @Override
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * The name of node i, without parsing it.
+     */
+    String name(int i) {
+        synchronized (nodes) {
+            //a node already parsed may have been renamed
+            return nodes[i] == null ? names[i] : nodes[i].name;
+        }
+    }
+
+    @Override
+    public Node get(int i) {
+        if (i < 0 || i >= nodes.length) {
+            throw new IndexOutOfBoundsException(String.format("Index: %s, Size: %s", i, nodes.length));
+        }
+        synchronized (nodes) {
+            Node node = nodes[i];
+            if (node == null) {
+                node = nodes[i] = parse(i);
+                node.parent = root;
+                if (i > 0 && nodes[i - 1] != null) {
+                    nodes[i - 1].next = node;
+                    node.previous = nodes[i - 1];
+                }
+                if (i + 1 < nodes.length && nodes[i + 1] != null) {
+                    nodes[i + 1].previous = node;
+                    node.next = nodes[i + 1];
+                }
+            }
+            return node;
+        }
+    }
+
+    //lexes from the node's name to the next top-level name, as the first pass left the lexer there
+    private Node parse(int i) {
+        DomListener dom = new DomListener();
+        Parser2.State state = new Parser2.State(Collections.singletonList(dom));
+        state.symbols = symbols;
+        state.curlySyntax = curlySyntax;
+        state.lineNumber = lines[i];
+        state.index = starts[i];
+        int lineStart = starts[i];
+        while (lineStart > 0 && source[lineStart - 1] != '\n') {
+            lineStart--;
+        }
+        state.lineIndex = starts[i] - lineStart;
+        dom.onStart();
+        boolean last = i == nodes.length - 1;
+        Parser2.Group group = Parser2.lex(source, starts[i], last ? source.length : starts[i + 1], Parser2.StartOfLine.I, state);
+        if (last) {
+            Parser2.end(group, state);
+        }
+        dom.onEnd();
+        return dom.getDocument().children.get(0);
+    }
+
+    /**
+     * The first pass: tags, and the top-level names and where they start.
+     */
+    private static final class Index implements Listener, SpanListener {
+        private final RootNode root;
+        private int[] starts = new int[16];
+        private int[] lines = new int[16];
+        private String[] names = new String[16];
+        private int size;
+        //a top-level name has been found, and onNodeName is about to tell what it is
+        private boolean named;
+
+        Index(RootNode root) {
+            this.root = root;
+        }
+
+        @Override
+        public void onTag(String tag, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+            root.tags.add(tag);
+        }
+
+        @Override
+        public void onTagSpan(Parser2.State state) {
+        }
+
+        @Override
+        public void onNameSpan(Parser2.State state) {
+            if (state.indent != 0 || state.window == null) {
+                //not top-level, or a name ending the document, which is an error
+                return;
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                lines = Arrays.copyOf(lines, size * 2);
+                names = Arrays.copyOf(names, size * 2);
+            }
+            int start = state.mark;
+            if (start < 0) {
+                //a carriage return in the name made the lexer copy it out: find the name before the current character
+                start = state.pos;
+                while (start > 0 && (Parser2.in(Parser2.Name.ALLOWED, state.window[start - 1]) || state.window[start - 1] == '\r')) {
+                    start--;
+                }
+            }
+            starts[size] = start;
+            lines[size] = state.lineNumber;
+            size++;
+            named = true;
+        }
+
+        @Override
+        public void onNodeName(String name, int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+            if (named) {
+                names[size - 1] = name;
+                named = false;
+            }
+        }
+
+        @Override
+        public void onValueSpan(Parser2.State state, Parser2.Group group) {
+        }
+    }
+}
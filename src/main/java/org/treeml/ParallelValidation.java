@@ -0,0 +1,118 @@
+package org.treeml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * ParserBase.validate spread over a ForkJoinPool. The nodes of a sibling list have to be matched in turn,
+ * but the children of a node can be validated as a separate task while the list goes on. Tasks return
+ * their errors in document order. String values of tokenid and tokenidref nodes are checked afterwards,
+ * in one ordered pass, since V005 and V008 depend on the token IDs declared before them. The errors
+ * are the same, in the same order, as those of a sequential validation.
+ */
+final class ParallelValidation {
+
+    //children lists shorter than this are validated by the task that finds them
+    private static final int FORK_MIN = 4;
+
+    private ParallelValidation() {
+    }
+
+    static void validate(RootNode document, CompiledSchema schema, ValidationContext context, ForkJoinPool pool) {
+        List<Object> entries = pool.invoke(new ListTask(document.children, schema, schema.firstChild[schema.root()]));
+        for (Object entry : entries) {
+            if (entry instanceof TokenCheck) {
+                TokenCheck check = (TokenCheck) entry;
+                ParserBase.validateType(check.node.name, check.node.line, check.node.getValue(), check.flags, context);
+            } else {
+                context.errors.add((String) entry);
+            }
+        }
+    }
+
+    //a string value whose check needs the token IDs declared so far
+    private static final class TokenCheck {
+        final Node node;
+        final int flags;
+
+        TokenCheck(Node node, int flags) {
+            this.node = node;
+            this.flags = flags;
+        }
+    }
+
+    /**
+     * Validates a sibling list, returning errors, TokenChecks and, until they are joined, the tasks
+     * validating children, all in document order.
+     */
+    private static final class ListTask extends RecursiveTask<List<Object>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Node> docNodes;
+        private final CompiledSchema schema;
+        private final int position;
+
+        ListTask(List<Node> docNodes, CompiledSchema schema, int position) {
+            this.docNodes = docNodes;
+            this.schema = schema;
+            this.position = position;
+        }
+
+        @Override
+        protected List<Object> compute() {
+            List<Object> entries = new ArrayList<>();
+            validate(docNodes, position, entries, new ValidationContext());
+            List<Object> joined = new ArrayList<>(entries.size());
+            for (Object entry : entries) {
+                if (entry instanceof ListTask) {
+                    joined.addAll(((ListTask) entry).join());
+                } else {
+                    joined.add(entry);
+                }
+            }
+            return joined;
+        }
+
+        //as ParserBase.validate, with the token checks and the children of long lists left for later
+        private void validate(List<Node> docNodes, int position, List<Object> entries, ValidationContext scratch) {
+            boolean secondOrMore = false;
+            for (Node docNode : docNodes) {
+                int state = position == CompiledSchema.NONE ? CompiledSchema.NONE
+                        : schema.match(position, schema.nameId(docNode.name), secondOrMore);
+                if (state < 0) {
+                    entries.add(ParserBase.notExpected(docNode.name, docNode.line, schema, state));
+                    return;
+                }
+                int flags = schema.flags[state];
+                if (docNode.getValue() instanceof String && (flags & (CompiledSchema.TOKENID | CompiledSchema.TOKENIDREF)) != 0) {
+                    entries.add(new TokenCheck(docNode, flags));
+                } else {
+                    ParserBase.validateType(docNode.name, docNode.line, docNode.getValue(), flags, scratch);
+                    if (!scratch.errors.isEmpty()) {
+                        entries.addAll(scratch.errors);
+                        scratch.errors.clear();
+                    }
+                }
+                if (docNode.children.size() >= FORK_MIN && getSurplusQueuedTaskCount() < 3) {
+                    ListTask task = new ListTask(docNode.children, schema, schema.firstChild[state]);
+                    task.fork();
+                    entries.add(task);
+                } else if (docNode.children.size() > 0) {
+                    validate(docNode.children, schema.firstChild[state], entries, scratch);
+                } else if ((flags & CompiledSchema.MANDATORY_CHILDREN) != 0) {
+                    entries.add(ParserBase.requiresChildren(docNode.name, docNode.line));
+                }
+                if ((flags & CompiledSchema.SINGLE) != 0) {
+                    position = schema.next[state];
+                    secondOrMore = false;
+                } else {
+                    position = state;
+                    secondOrMore = true;
+                }
+            }
+        }
+    }
+}
@@ -1,8 +1,15 @@
 package org.treeml;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Parses a tab-indented or curly-indented file into a tree of name-value Nodes.
@@ -16,19 +23,40 @@ public class Parser2 extends ParserBase {
     public static final String NULL = "null", TRUE = "true", FALSE = "false";
     public final Options options;
     public final List<Listener> listeners = new ArrayList<>(1);
+    /**
+     * Names and tokens of documents parsed without a schema; a schema carries its own.
+     */
+    public final SymbolTable symbols = new SymbolTable();
 
-    enum Types {
+    /**
+     * Characters read from the input at a time.
+     */
+    static final int WINDOW = 1 << 16;
+
+    /**
+     * Bytes of a file mapped at a time; a single mapping cannot exceed 2 GB.
+     */
+    static final long MAP_CHUNK = 1L << 30;
+
+    public enum Types {
         tokenValue, stringValue, longValue, timeValue, doubleValue
     }
 
     public static class Options {
         final boolean verbose, timed, streaming, character;
+        //validate the DOM on the common ForkJoinPool
+        final boolean parallel;
 
         public Options(boolean verbose, boolean timed, boolean streaming, boolean character) {
+            this(verbose, timed, streaming, character, false);
+        }
+
+        public Options(boolean verbose, boolean timed, boolean streaming, boolean character, boolean parallel) {
             this.verbose = verbose;
             this.timed = timed;
             this.streaming = streaming;
             this.character = character;
+            this.parallel = parallel;
         }
     }
 
@@ -71,52 +99,277 @@ public class Parser2 extends ParserBase {
     }
 
     protected Node doParse(Reader input, Schema schema) throws IOException {
-        State state = new State(listeners);
-        DomListener dom = new DomListener();
-        CharacterListener characterListener = new CharacterListener();
+        State state = start(schema);
+        char[] window = new char[WINDOW];
+        Group group = Prolog.I;
+        int n;
+        while ((n = input.read(window, 0, window.length)) != -1) {
+            group = lex(window, 0, n, group, state);
+        }
+        return finish(group, state, schema);
+    }
+
+    @Override
+    protected Node doParseSchema(Reader input) throws IOException {
+        return options.streaming ? new Parser2().doParse(input, Schema.PASS) : doParse(input, Schema.PASS);
+    }
+
+    /**
+     * Memory-maps the file, in chunks of MAP_CHUNK bytes, and lexes it as raw UTF-8 bytes.
+     */
+    @Override
+    protected Node doParse(Path input, Schema schema) throws IOException {
+        State state = start(schema);
+        state.bytes = true;
+        char[] window = new char[WINDOW];
+        Group group = Prolog.I;
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_CHUNK) {
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_CHUNK, size - position));
+                group = lexBytes(chunk, window, group, state);
+            }
+        }
+        return finish(group, state, schema);
+    }
+
+    /**
+     * Lexes the stream as raw UTF-8 bytes, without an InputStreamReader.
+     */
+    @Override
+    protected Node doParse(InputStream input, Schema schema) throws IOException {
+        State state = start(schema);
+        state.bytes = true;
+        char[] window = new char[WINDOW];
+        byte[] bytes = new byte[WINDOW];
+        Group group = Prolog.I;
+        int n;
+        while ((n = input.read(bytes, 0, bytes.length)) != -1) {
+            for (int i = 0; i < n; i++) {
+                window[i] = (char) (bytes[i] & 0xFF);
+            }
+            group = lex(window, 0, n, group, state);
+        }
+        return finish(group, state, schema);
+    }
+
+    /**
+     * Parses a document held in memory into a DOM whose values are decoded the first time Node.getValue reads them,
+     * for large documents of which little is read. Until then the value field is null, and the DOM keeps a copy of
+     * the text. Validating against a schema reads every value. A streaming parser makes no DOM, so cannot.
+     */
+    public Node parseLazy(CharSequence input) {
+        return parseLazy(input, Schema.PASS);
+    }
+
+    public Node parseLazy(CharSequence input, Schema schema) {
+        if (options.streaming) {
+            throw new IllegalStateException("Cannot parse lazily in streaming mode.");
+        }
+        char[] source = toChars(input);
+        //one window, so that values stay spans of the source
+        State state = start(schema, true);
+        return finish(lex(source, 0, source.length, Prolog.I, state), state, schema);
+    }
+
+    /**
+     * Parses a document held in memory into a root whose top-level nodes are each parsed, with their subtrees,
+     * the first time they are read from its children, for large documents of which few entries are wanted.
+     * The whole document is still lexed once, which throws any syntax error; no listeners are called and
+     * nothing is validated.
+     */
+    public RootNode parseOnDemand(CharSequence input) {
+        return OnDemandChildren.parse(toChars(input), symbols);
+    }
+
+    private static char[] toChars(CharSequence input) {
+        char[] source = new char[input.length()];
+        if (input instanceof String) {
+            ((String) input).getChars(0, source.length, source, 0);
+        } else {
+            for (int i = 0; i < source.length; i++) {
+                source[i] = input.charAt(i);
+            }
+        }
+        return source;
+    }
+
+    State start(Schema schema) {
+        return start(schema, false);
+    }
+
+    private State start(Schema schema, boolean lazy) {
+        List<Listener> all = new ArrayList<>(listeners);
+        DomListener dom = null;
         if (!options.streaming) {
-            state.listeners.add(dom);
+            dom = lazy ? new LazyDomListener() : new DomListener();
+            all.add(dom);
         }
         if (options.character) {
-            state.listeners.add(characterListener);
+            all.add(new CharacterListener());
+        }
+        if (options.streaming && !schema.equals(Schema.PASS)) {
+            //last, as it throws from onEnd when the document is invalid
+            all.add(new ValidatingListener(schema));
+        }
+        State state = new State(all);
+        state.dom = dom;
+        state.symbols = schema.equals(Schema.PASS) ? symbols : schema.symbols;
+        if (dom instanceof LazyDomListener) {
+            state.spans = (LazyDomListener) dom;
         }
-        for (Listener listener : state.listeners) {
+        for (Listener listener : state.listeners.all) {
             listener.onStart();
         }
-        BufferedReader reader = new BufferedReader(input);
-        int c = (char) reader.read();
-        Group group = Prolog.I;
-        while (c != -1) {
+        return state;
+    }
+
+    Node finish(Group group, State state, Schema schema) {
+        end(group, state);
+        RootNode document = state.dom == null ? null : state.dom.getDocument();
+        if (document != null) {
+            validate(document, schema, options.parallel ? ForkJoinPool.commonPool() : null);
+        }
+        for (Listener listener : state.listeners.all) {
+            listener.onEnd();
+        }
+        return document;
+    }
+
+    /**
+     * Ends the input: the last line may lack its newline, but nothing may be left open.
+     */
+    static Group end(Group group, State state) {
+        group = group.read('\n', state);
+        if ((state.curlySyntax && state.indent != -1) || (!state.curlySyntax && !group.equals(StartOfLine.I))) {
+            throw new RuntimeException(String.format("Unterminated {line %s, position %s}", state.lineNumber, state.lineIndex));
+        }
+        return group;
+    }
+
+    /**
+     * Lexes raw UTF-8 bytes by widening each byte to a char of the window. All TreeML structure is ASCII, and
+     * non-ASCII text is only legal in strings, tags and comments, so the tree is the same as from a Reader:
+     * State.string decodes strings and tags, and error messages decode the character they show. Positions,
+     * though, count bytes rather than characters, and onCharacter listeners get one call per byte.
+     */
+    private Group lexBytes(ByteBuffer bytes, char[] window, Group group, State state) {
+        while (bytes.hasRemaining()) {
+            int position = bytes.position();
+            int n = Math.min(window.length, bytes.remaining());
+            for (int i = 0; i < n; i++) {
+                window[i] = (char) (bytes.get(position + i) & 0xFF);
+            }
+            bytes.position(position + n);
+            group = lex(window, 0, n, group, state);
+        }
+        return group;
+    }
+
+    /**
+     * Runs the state machine over window[from, to). Runs of characters that leave the current group
+     * unchanged (names, tokens, digits, string contents, comments, whitespace) are consumed by
+     * Group.scan in one go; everything else goes through Group.read a character at a time.
+     * Text being collected when the window ends is copied out, so the window can be refilled.
+     * When a listener sets State.pause, lexing stops after the current character and State.pos
+     * is where to resume; the window must then be left untouched until lexing resumes.
+     */
+    static Group lex(char[] window, int from, int to, Group group, State state) {
+        state.window = window;
+        state.limit = to;
+        int i = from;
+        while (i < to) {
+            state.pos = i;
+            int end = group.scan(window, i, to, state);
+            if (end > i) {
+                run(window, i, end, group, state);
+                i = end;
+                continue;
+            }
+            char c = window[i];
             location(state);
-            if ((char) c != '\r') {
-                group = group.read((char) c, state);
-                for (Listener listener : state.listeners) {
-                    listener.onCharacter((char) c, state.indent, state.index, state.lineNumber, state.lineIndex, group);
+            if (c != '\r') {
+                group = group.read(c, state);
+                for (Listener listener : state.listeners.characters) {
+                    listener.onCharacter(c, state.indent, state.index, state.lineNumber, state.lineIndex, group);
                 }
-                if (" \t\n".indexOf(c) < 0) {
-                    state.lastSignificantChar = (char)c;
+                if (c != ' ' && c != '\t' && c != '\n') {
+                    state.lastSignificantChar = c;
+                }
+            } else {
+                //carriage returns are never part of a value
+                state.detach();
+            }
+            newline(c, state);
+            i++;
+            if (state.pause) {
+                state.pause = false;
+                if (i < to) {
+                    state.pos = i;
+                    return group;
                 }
             }
-            newline((char) c, state);
-            c = reader.read();
         }
-        group = group.read('\n', state);
-        if ((state.curlySyntax && state.indent != -1) || (!state.curlySyntax && !group.equals(StartOfLine.I))) {
-            throw new RuntimeException(String.format("Unterminated {line %s, position %s}", state.lineNumber, state.lineIndex));
+        state.pos = to;
+        state.detach();
+        state.window = null;
+        return group;
+    }
+
+    //the character for an error message: when lexing bytes, the whole UTF-8 sequence starting at it
+    static String shown(char c, State state) {
+        if (!state.bytes || c < 0x80 || state.window == null || state.pos >= state.limit || state.window[state.pos] != c) {
+            return String.valueOf(c);
         }
-        validate(dom.getDocument(), schema);
-        for (Listener listener : state.listeners) {
-            listener.onEnd();
+        int end = Math.min(state.limit, state.pos + (c >= 0xf0 ? 4 : c >= 0xe0 ? 3 : c >= 0xc0 ? 2 : 1));
+        byte[] bytes = new byte[end - state.pos];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) state.window[state.pos + i];
         }
-        return dom.getDocument();
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
-    private void location(State state) {
+    //bookkeeping for a run consumed by Group.scan: no newlines, and the group did not change
+    private static void run(char[] window, int from, int to, Group group, State state) {
+        if (state.listeners.characters.length == 0) {
+            state.index += to - from;
+            state.lineIndex += to - from;
+        } else {
+            for (int i = from; i < to; i++) {
+                state.index++;
+                state.lineIndex++;
+                for (Listener listener : state.listeners.characters) {
+                    listener.onCharacter(window[i], state.indent, state.index, state.lineNumber, state.lineIndex, group);
+                }
+            }
+        }
+        for (int i = to - 1; i >= from; i--) {
+            char c = window[i];
+            if (c != ' ' && c != '\t') {
+                state.lastSignificantChar = c;
+                break;
+            }
+        }
+    }
+
+    static boolean[] table(String characters) {
+        boolean[] table = new boolean[128];
+        for (int i = 0; i < characters.length(); i++) {
+            table[characters.charAt(i)] = true;
+        }
+        return table;
+    }
+
+    static boolean in(boolean[] table, char c) {
+        return c < 128 && table[c];
+    }
+
+    private static void location(State state) {
         state.index++;
         state.lineIndex++;
     }
 
-    private void newline(char c, State state) {
+    private static void newline(char c, State state) {
         if (c == '\n') {
             state.lineNumber++;
             state.lineIndex = 0;
@@ -135,7 +388,7 @@ public class Parser2 extends ParserBase {
             throw new RuntimeException(String.format("Illegal indent: %s --> %s {line %s, position %s}", state.previousIndent, state.indent, state.lineNumber, state.lineIndex));
         }
         state.previousIndent = state.indent;
-        for (Listener listener : state.listeners) {
+        for (Listener listener : state.listeners.nodes) {
             listener.onAddNode(state.indent, state.index, state.lineNumber, state.lineIndex, group);
         }
         state.endStatement();
@@ -147,8 +400,8 @@ public class Parser2 extends ParserBase {
         }
     }
 
-    public class State {
-        private final List<Listener> listeners;
+    public static class State {
+        final Listeners listeners;
         int lineNumber = 1;
         public int index;
         public int lineIndex;
@@ -158,9 +411,22 @@ public class Parser2 extends ParserBase {
         public boolean escape;
         public Types type;
         public char lastSignificantChar;
+        //the window being lexed, the position of the current character, and the start of the text
+        //being collected when it is still a span of the window rather than in the buffer
+        char[] window;
+        int limit;
+        int pos;
+        int mark = -1;
+        //the window holds raw UTF-8 bytes, one per char
+        boolean bytes;
+        DomListener dom;
+        SpanListener spans;
+        boolean pause;
+        //canonical names and tokens, or null to make a String of each
+        SymbolTable symbols;
 
         public State(List<Listener> listeners) {
-            this.listeners = listeners;
+            this.listeners = new Listeners(listeners);
         }
 
         public void endStatement() {
@@ -168,14 +434,189 @@ public class Parser2 extends ParserBase {
                 indent = 0;
             }
             buffer = null;
+            mark = -1;
+        }
+
+        /**
+         * True when some listener takes values, so they are worth building.
+         */
+        public boolean wantsValues() {
+            return listeners.values.length > 0;
+        }
+
+        /**
+         * True when text is being collected.
+         */
+        public boolean collecting() {
+            return mark >= 0 || buffer != null;
+        }
+
+        /**
+         * Starts collecting text just after the current character, which is an opening delimiter.
+         */
+        void beginAfter() {
+            buffer = null;
+            mark = pos + 1;
+        }
+
+        /**
+         * Adds c to the text being collected, starting it if need be. When c is the current
+         * character of the window and the text is still a span, this is free.
+         */
+        public void append(char c) {
+            if (mark >= 0) {
+                if (pos < limit && window[pos] == c) {
+                    return;
+                }
+                toBuffer();
+            } else if (buffer == null) {
+                if (window != null && pos < limit && window[pos] == c) {
+                    mark = pos;
+                    return;
+                }
+                buffer = new StringBuilder();
+            }
+            buffer.append(c);
+        }
+
+        /**
+         * The current character is dropped from the text, which therefore cannot stay a span.
+         */
+        void skip() {
+            if (mark >= 0) {
+                toBuffer();
+            } else if (buffer == null) {
+                buffer = new StringBuilder();
+            }
+        }
+
+        //called with window[from, to) consumed by Group.scan, which is implicitly in a span
+        void extend(char[] chars, int from, int to) {
+            if (buffer != null) {
+                buffer.append(chars, from, to - from);
+            }
+        }
+
+        //the window is about to be refilled or a character has been dropped: copy out the span
+        void detach() {
+            if (mark >= 0) {
+                toBuffer();
+            }
+        }
+
+        private void toBuffer() {
+            int length = Math.max(0, pos - mark);
+            buffer = new StringBuilder(length + 16);
+            buffer.append(window, mark, length);
+            mark = -1;
+        }
+
+        //copies the text collected so far to chars at offset, which must leave room for it
+        void getChars(char[] chars, int offset) {
+            if (mark >= 0) {
+                System.arraycopy(window, mark, chars, offset, pos - mark);
+            } else if (buffer != null) {
+                buffer.getChars(0, buffer.length(), chars, offset);
+            }
+        }
+
+        public int length() {
+            return mark >= 0 ? pos - mark : buffer == null ? 0 : buffer.length();
+        }
+
+        public char charAt(int i) {
+            return mark >= 0 ? window[mark + i] : buffer.charAt(i);
+        }
+
+        boolean contains(char c) {
+            for (int i = length() - 1; i >= 0; i--) {
+                if (charAt(i) == c) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean textEquals(String s) {
+            int length = length();
+            if (length != s.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (charAt(i) != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The text collected so far.
+         */
+        public String text() {
+            if (mark >= 0) {
+                return new String(window, mark, pos - mark);
+            }
+            return buffer == null ? "" : buffer.toString();
+        }
+
+        /**
+         * The text of a string value or tag, decoded from UTF-8 when the window holds raw bytes.
+         */
+        public String string() {
+            if (bytes) {
+                int length = length();
+                for (int i = 0; i < length; i++) {
+                    if (charAt(i) >= 0x80) {
+                        byte[] utf8 = new byte[length];
+                        for (int j = 0; j < length; j++) {
+                            utf8[j] = (byte) charAt(j);
+                        }
+                        return new String(utf8, StandardCharsets.UTF_8);
+                    }
+                }
+            }
+            return text();
+        }
+
+        //the text as a long, without making a String when it is plain digits
+        long longValue() {
+            int length = length();
+            if (length == 0 || length > 18) {
+                return Long.parseLong(text());
+            }
+            boolean negative = charAt(0) == '-';
+            int i = negative ? 1 : 0;
+            if (i == length) {
+                return Long.parseLong(text());
+            }
+            long value = 0;
+            for (; i < length; i++) {
+                char c = charAt(i);
+                if (c < '0' || c > '9') {
+                    return Long.parseLong(text());
+                }
+                value = value * 10 + (c - '0');
+            }
+            return negative ? -value : value;
         }
     }
 
     public interface Group {
         Group read(char c, State state);
 
+        /**
+         * Consumes the run of characters starting at window[from] that read would take one at a time
+         * without leaving this group, and returns the index just past it. None of them may be a newline
+         * or carriage return. The default consumes nothing.
+         */
+        default int scan(char[] window, int from, int to, State state) {
+            return from;
+        }
+
         static Group getGroup(char c, State state, Group instance) {
             state.buffer = null;
+            state.mark = -1;
             state.escape = false;
             return instance.read(c, state);
         }
@@ -188,20 +629,23 @@ public class Parser2 extends ParserBase {
 
         @Override
         public Group read(char c, State state) {
-            if (c == '#' && state.buffer == null) {
-                state.buffer = new StringBuilder();
+            if (c == '#' && !state.collecting()) {
+                state.beginAfter();
             } else if (c == '\n' || c == '\\') {
-                if (state.buffer != null) {
-                    String tag = state.buffer.toString();
-                    for (Listener listener : state.listeners) {
+                if (state.collecting() && state.spans != null) {
+                    state.spans.onTagSpan(state);
+                }
+                if (state.collecting() && state.listeners.tags.length > 0) {
+                    String tag = state.string();
+                    for (Listener listener : state.listeners.tags) {
                         listener.onTag(tag, state.index, state.lineNumber, state.lineIndex, this);
                     }
                 }
                 state.endStatement();
-            } else if (c == '{' && state.buffer == null) {
+            } else if (c == '{' && !state.collecting()) {
                 state.curlySyntax = true;
-            } else if (state.buffer != null) {
-                state.buffer.append(c);
+            } else if (state.collecting()) {
+                state.append(c);
             } else {
                 return Group.getGroup(c, state, StartOfLine.I);
             }
@@ -213,6 +657,15 @@ public class Parser2 extends ParserBase {
 
         public static final StartOfLine I = new StartOfLine();
 
+        @Override
+        public int scan(char[] window, int from, int to, State state) {
+            int i = from;
+            while (i < to && window[i] == ' ') {
+                i++;
+            }
+            return i;
+        }
+
         @Override
         public Group read(char c, State state) {
             if (c == ' ') {
@@ -233,7 +686,7 @@ public class Parser2 extends ParserBase {
             } else if (Name.allowed.indexOf(c) > -1) {
                 return Group.getGroup(c, state, Name.I);
             } else {
-                throw new RuntimeException(String.format("Illegal start of a name: %s {line %s, position %s}", c, state.lineNumber, state.lineIndex));
+                throw new RuntimeException(String.format("Illegal start of a name: %s {line %s, position %s}", shown(c, state), state.lineNumber, state.lineIndex));
             }
             return this;
         }
@@ -242,28 +695,40 @@ public class Parser2 extends ParserBase {
     public static class Name implements Group {
         public static final Name I = new Name();
         public static final String allowed = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789_";
+        static final boolean[] ALLOWED = table(allowed);
+
+        @Override
+        public int scan(char[] window, int from, int to, State state) {
+            return collect(ALLOWED, window, from, to, state);
+        }
 
         @Override
         public Group read(char c, State state) {
-            if (allowed.indexOf(c) > -1) {
-                if (state.buffer == null) {
-                    state.buffer = new StringBuilder();
-                }
-                state.buffer.append(c);
-            } else {
-                String name = state.buffer.toString();
-                for (Listener listener : state.listeners) {
+            if (in(ALLOWED, c)) {
+                state.append(c);
+                return this;
+            }
+            if (state.spans != null) {
+                state.spans.onNameSpan(state);
+            }
+            if (state.listeners.names.length > 0) {
+                String name = state.symbols == null ? state.text() : state.symbols.intern(state);
+                for (Listener listener : state.listeners.names) {
                     listener.onNodeName(name, state.indent, state.index, state.lineNumber, state.lineIndex, this);
                 }
-                return Group.getGroup(c, state, InterStage.I);
             }
-            return this;
+            return Group.getGroup(c, state, InterStage.I);
         }
     }
 
     public static class InterStage implements Group {
         public static final InterStage I = new InterStage();
 
+        @Override
+        public int scan(char[] window, int from, int to, State state) {
+            return blanks(window, from, to);
+        }
+
         @Override
         public Group read(char c, State state) {
             if (c == ' ' || c == '\t') {
@@ -272,7 +737,7 @@ public class Parser2 extends ParserBase {
             } else if (c == ':') {
                 return Group.getGroup(' ', state, BeforeValue.I);
             }
-            throw new RuntimeException(String.format("Name:Value not separated by legal character: %s {line %s, position %s}", c, state.lineNumber, state.lineIndex));
+            throw new RuntimeException(String.format("Name:Value not separated by legal character: %s {line %s, position %s}", shown(c, state), state.lineNumber, state.lineIndex));
         }
     }
 
@@ -280,14 +745,17 @@ public class Parser2 extends ParserBase {
         public static final Token I = new Token();
         public static final String allowedFirstCharacter = "abcdefghijklmnopqrstuvwxyz_";
         public static final String allowed = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789_";
+        static final boolean[] ALLOWED = table(allowed);
+
+        @Override
+        public int scan(char[] window, int from, int to, State state) {
+            return collect(ALLOWED, window, from, to, state);
+        }
 
         @Override
         public Group read(char c, State state) {
-            if (state.buffer == null) {
-                state.buffer = new StringBuilder();
-            }
-            if (allowed.indexOf(c) > -1) {
-                state.buffer.append(c);
+            if (in(ALLOWED, c)) {
+                state.append(c);
                 return this;
             } else {
                 return addValue(deriveValue(state), state, c, this);
@@ -295,15 +763,16 @@ public class Parser2 extends ParserBase {
         }
 
         private Object deriveValue(State state) {
-            String v = state.buffer.toString();
-            if ("null".equals(v)) {
+            if (!state.wantsValues()) {
                 return null;
-            } else if ("true".equals(v)) {
+            } else if (state.textEquals(NULL)) {
+                return null;
+            } else if (state.textEquals(TRUE)) {
                 return true;
-            } else if ("false".equals(v)) {
+            } else if (state.textEquals(FALSE)) {
                 return false;
             } else {
-                return v;
+                return state.symbols == null ? state.text() : state.symbols.intern(state);
             }
         }
     }
@@ -312,38 +781,40 @@ public class Parser2 extends ParserBase {
         public static final NumberValue I = new NumberValue();
         public static final String allowedFirstCharacter = ".0123456789-";
         public static final String allowed = ".0123456789-_e";
+        static final boolean[] ALLOWED = table(allowed);
+        static final boolean[] DIGITS = table("0123456789");
+
+        @Override
+        public int scan(char[] window, int from, int to, State state) {
+            return collect(DIGITS, window, from, to, state);
+        }
 
         @Override
         public Group read(char c, State state) {
-            if (state.buffer == null) {
-                state.buffer = new StringBuilder();
-            }
             if (c == '.' || c == 'e') {
-                if (state.buffer.indexOf("" + c) > -1) {
-                    throw new RuntimeException(String.format("Invalid number, two \"%s\": \\%s. {line %s, position %s}", c, state.buffer, state.lineNumber, state.lineIndex));
+                if (state.contains(c)) {
+                    throw new RuntimeException(String.format("Invalid number, two \"%s\": \\%s. {line %s, position %s}", c, state.text(), state.lineNumber, state.lineIndex));
                 }
                 state.type = Types.doubleValue;
-                state.buffer.append(c);
+                state.append(c);
                 return this;
             } else if (c == '-') {
-                if (state.buffer.length() != 0 && state.buffer.charAt(state.buffer.length() - 1) != 'e') {
-                    throw new RuntimeException(String.format("Invalid number, ,misplaced -: \\%s- {line %s, position %s}", state.buffer, state.lineNumber, state.lineIndex));
+                if (state.length() != 0 && state.charAt(state.length() - 1) != 'e') {
+                    throw new RuntimeException(String.format("Invalid number, ,misplaced -: \\%s- {line %s, position %s}", state.text(), state.lineNumber, state.lineIndex));
                 }
-                state.buffer.append(c);
+                state.append(c);
                 return this;
             } else if (c == '_') {
+                state.skip();
                 return this;
-            } else if (allowed.indexOf(c) > -1) {
-                state.buffer.append(c);
+            } else if (in(ALLOWED, c)) {
+                state.append(c);
                 return this;
             } else {
-                Object value;
                 if (state.type == Types.longValue) {
-                    value = Long.valueOf(state.buffer.toString());
-                } else {
-                    value = Double.valueOf(state.buffer.toString());
+                    return addLong(state.longValue(), state, c, this);
                 }
-                return addValue(value, state, c, this);
+                return addDouble(Double.parseDouble(state.text()), state, c, this);
             }
         }
     }
@@ -351,38 +822,56 @@ public class Parser2 extends ParserBase {
     public static class StringValue implements Group {
         public static final StringValue I = new StringValue();
 
+        @Override
+        public int scan(char[] window, int from, int to, State state) {
+            if (!state.collecting() || state.escape) {
+                return from;
+            }
+            int i = from;
+            while (i < to) {
+                char c = window[i];
+                if (c == '"' || c == '\\' || c == '\n' || c == '\r') {
+                    break;
+                }
+                i++;
+            }
+            state.extend(window, from, i);
+            return i;
+        }
+
         @SuppressWarnings("ConstantConditions")
         @Override
         public Group read(char c, State state) {
-            if (state.buffer == null) {
-                state.buffer = new StringBuilder();
+            if (!state.collecting()) {
                 //throw away opening quote
+                state.beginAfter();
                 return this;
             } else if (c == '\\' && !state.escape) {
                 state.escape = true;
+                state.skip();
                 return this;
             } else if (c == '\\' && state.escape) {
                 state.escape = false;
-                state.buffer.append(c);
+                state.append(c);
                 return this;
             } else if (c == '"' && !state.escape) {
-                return addValue(state.buffer.toString(), state, ' ', this);
+                return addValue(state.wantsValues() ? state.string() : null, state, ' ', this);
             } else if (c == '"' && state.escape) {
                 state.escape = false;
-                state.buffer.append(c);
+                state.append(c);
                 return this;
             } else if (c == 'r' && state.escape) {
                 state.escape = false;
-                state.buffer.append('\r');
+                state.append('\r');
                 return this;
             } else if (c == 'n' && state.escape) {
                 state.escape = false;
-                state.buffer.append('\n');
+                state.append('\n');
                 return this;
             } else if (state.escape) {
-                throw new RuntimeException(String.format("Invalid escape sequence: \\%s {line %s, position %s}", c, state.lineNumber, state.lineIndex));
+                throw new RuntimeException(String.format("Invalid escape sequence: \\%s {line %s, position %s}", shown(c, state), state.lineNumber, state.lineIndex));
             } else {
-                state.buffer.append(c);
+                state.append(c);
                 return this;
             }
         }
@@ -391,19 +880,27 @@ public class Parser2 extends ParserBase {
     public static class TimeValue implements Group {
         public static final TimeValue I = new TimeValue();
         public static final String allowed = "0123456789+-THMSPZ:.";
+        static final boolean[] ALLOWED = table(allowed);
+
+        @Override
+        public int scan(char[] window, int from, int to, State state) {
+            return collect(ALLOWED, window, from, to, state);
+        }
 
         @SuppressWarnings("ConstantConditions")
         @Override
         public Group read(char c, State state) {
-            if (state.buffer == null) {
-                state.buffer = new StringBuilder();
+            if (!state.collecting()) {
                 //throw away opening @
+                state.beginAfter();
                 return this;
-            } else if (allowed.indexOf(c) > -1) {
-                state.buffer.append(c);
+            } else if (in(ALLOWED, c)) {
+                state.append(c);
                 return this;
+            } else if (!state.wantsValues()) {
+                return addValue(null, state, c, this);
             } else {
-                String value0 = state.buffer.toString();
+                String value0 = state.text();
                 Object value;
                 if (value0.startsWith("P")) {
                     value = new Duration(value0);
@@ -416,16 +913,84 @@ public class Parser2 extends ParserBase {
     }
 
     private static Group addValue(Object value, State state, char c, Group group) {
-        for (Listener listener : state.listeners) {
+        if (state.spans != null) {
+            state.spans.onValueSpan(state, group);
+        }
+        for (Listener listener : state.listeners.values) {
             listener.onAddValue(value, state.type, state.indent, state.index, state.lineNumber, state.lineIndex, group);
         }
 
         return Group.getGroup(c, state, AfterValue.I);
     }
 
+    /**
+     * A value from its text as written, as the lexer would have built it.
+     */
+    static Object decode(Types type, char[] chars, int offset, int length) {
+        String text = new String(chars, offset, length);
+        switch (type) {
+            case tokenValue:
+                return NULL.equals(text) ? null : TRUE.equals(text) ? Boolean.TRUE : FALSE.equals(text) ? Boolean.FALSE : text;
+            case longValue:
+                return Long.valueOf(text);
+            case doubleValue:
+                return Double.valueOf(text);
+            case timeValue:
+                return text.startsWith("P") ? new Duration(text) : new DateTime(text);
+            default:
+                return text;
+        }
+    }
+
+    private static Group addLong(long value, State state, char c, Group group) {
+        if (state.spans != null) {
+            state.spans.onValueSpan(state, group);
+        }
+        for (Listener listener : state.listeners.values) {
+            listener.onAddLong(value, state.indent, state.index, state.lineNumber, state.lineIndex, group);
+        }
+        return Group.getGroup(c, state, AfterValue.I);
+    }
+
+    private static Group addDouble(double value, State state, char c, Group group) {
+        if (state.spans != null) {
+            state.spans.onValueSpan(state, group);
+        }
+        for (Listener listener : state.listeners.values) {
+            listener.onAddDouble(value, state.indent, state.index, state.lineNumber, state.lineIndex, group);
+        }
+        return Group.getGroup(c, state, AfterValue.I);
+    }
+
+    //a run of characters from the table, added to the text being collected
+    private static int collect(boolean[] table, char[] window, int from, int to, State state) {
+        if (!state.collecting()) {
+            return from;
+        }
+        int i = from;
+        while (i < to && in(table, window[i])) {
+            i++;
+        }
+        state.extend(window, from, i);
+        return i;
+    }
+
+    private static int blanks(char[] window, int from, int to) {
+        int i = from;
+        while (i < to && (window[i] == ' ' || window[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
 public static class BeforeValue implements Group {
     public static final BeforeValue I = new BeforeValue();
 
+    @Override
+    public int scan(char[] window, int from, int to, State state) {
+        return blanks(window, from, to);
+    }
+
     @Override
     public Group read(char c, State state) {
         if (Token.allowedFirstCharacter.indexOf(c) > -1) {
@@ -450,7 +1015,7 @@ public static class BeforeValue implements Group {
             if (state.lastSignificantChar == ',') {
                 throw new RuntimeException(String.format("Repeated comma {line %s, position %s}", state.lineNumber, state.lineIndex));
             }
-            for (Listener listener : state.listeners) {
+            for (Listener listener : state.listeners.lists) {
                 listener.onDeclareList(state.indent, state.index, state.lineNumber, state.lineIndex, this);
             }
             return Group.getGroup(c, state, AfterValue.I);
@@ -460,7 +1025,7 @@ public static class BeforeValue implements Group {
         } else if (c == '}' && state.curlySyntax) {
             return addValue(null, state, c, this);
         } else {
-            throw new RuntimeException(String.format("Value invalid start character: %s {line %s, position %s}", c, state.lineNumber, state.lineIndex));
+            throw new RuntimeException(String.format("Value invalid start character: %s {line %s, position %s}", shown(c, state), state.lineNumber, state.lineIndex));
         }
     }
 }
@@ -468,6 +1033,11 @@ public static class BeforeValue implements Group {
 public static class AfterValue implements Group {
     public static final AfterValue I = new AfterValue();
 
+    @Override
+    public int scan(char[] window, int from, int to, State state) {
+        return blanks(window, from, to);
+    }
+
     @Override
     public Group read(char c, State state) {
         if (c == ' ' || c == '\t') {
@@ -486,7 +1056,7 @@ public static class AfterValue implements Group {
             if (state.lastSignificantChar == ',') {
                 throw new RuntimeException(String.format("Repeated comma {line %s, position %s}", state.lineNumber, state.lineIndex));
             }
-            for (Listener listener : state.listeners) {
+            for (Listener listener : state.listeners.lists) {
                 listener.onDeclareList(state.indent, state.index, state.lineNumber, state.lineIndex, this);
             }
             return Group.getGroup(' ', state, BeforeValue.I);
@@ -494,7 +1064,7 @@ public static class AfterValue implements Group {
             addNode(state, this);
             return Group.getGroup(c, state, StartOfLine.I);
         }
-        throw new RuntimeException(String.format("AfterValue not separated by legal character: %s {line %s, position %s}", c, state.lineNumber, state.lineIndex));
+        throw new RuntimeException(String.format("AfterValue not separated by legal character: %s {line %s, position %s}", shown(c, state), state.lineNumber, state.lineIndex));
     }
 }
 
@@ -523,28 +1093,40 @@ public static class Continuation implements Group {
                 return Group.getGroup(c, state, StartOfLine.I);
             }
         }
-        throw new RuntimeException(String.format("Continuation not legal character: %s {line %s, position %s}", c, state.lineNumber, state.lineIndex));
+        throw new RuntimeException(String.format("Continuation not legal character: %s {line %s, position %s}", shown(c, state), state.lineNumber, state.lineIndex));
     }
 }
 
 public static class Comment implements Group {
     public static final Comment I = new Comment();
 
+    @Override
+    public int scan(char[] window, int from, int to, State state) {
+        if (state.length() < 2) {
+            return from;
+        }
+        int i = from;
+        while (i < to && window[i] != '\n' && window[i] != '\r') {
+            i++;
+        }
+        return i;
+    }
+
     @Override
     public Group read(char c, State state) {
-        if (state.buffer != null) {
-            if (state.buffer.length() == 1 && '/' != c) {
-                throw new RuntimeException(String.format("Illegal start of a comment: /%s {line %s, position %s}", c, state.lineNumber, state.lineIndex));
-            } else if (state.buffer.length() == 1) {
-                state.buffer.append(c);
+        if (state.collecting()) {
+            if (state.length() == 1 && '/' != c) {
+                throw new RuntimeException(String.format("Illegal start of a comment: /%s {line %s, position %s}", shown(c, state), state.lineNumber, state.lineIndex));
+            } else if (state.length() == 1) {
+                state.append(c);
             } else if (c == '\n') {
                 state.endStatement();
                 return Group.getGroup(c, state, StartOfLine.I);
             }
         } else {
             if (c != '/')
-                throw new RuntimeException(String.format("Illegal start of a comment: %s {line %s, position %s}", c, state.lineNumber, state.lineIndex));
-            state.buffer = new StringBuilder().append(c);
+                throw new RuntimeException(String.format("Illegal start of a comment: %s {line %s, position %s}", shown(c, state), state.lineNumber, state.lineIndex));
+            state.append(c);
         }
         return this;
     }
@@ -1,8 +1,13 @@
 package org.treeml;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Pattern;
 
 /**
@@ -80,12 +85,19 @@ public abstract class ParserBase {
         //Reader ssr = new InputStreamReader(schemaSchemaStream);
         //Node schemaSchemaDocument = parse(ssr);
         //Schema schema = new Schema(schemaSchemaDocument);
-        final Node node = doParse(inputSchema, Schema.PASS);
+        final Node node = doParseSchema(inputSchema);
         return new Schema(node);
     }
 
     protected abstract Node doParse(Reader inputSchema, Schema schema) throws IOException;
 
+    /**
+     * Parses a schema document, which has to be a DOM whatever the parser's options.
+     */
+    protected Node doParseSchema(Reader inputSchema) throws IOException {
+        return doParse(inputSchema, Schema.PASS);
+    }
+
     public final Node parse(String inputClassPath) throws IOException {
         return doParse(
                 new InputStreamReader(this.getClass().getResourceAsStream(inputClassPath))
@@ -102,115 +114,176 @@ public abstract class ParserBase {
         return doParse(input, Schema.PASS);
     }
 
+    /**
+     * Parses a UTF-8 file. Parser2 lexes the bytes without decoding them first, which gives the same tree as a
+     * Reader, but positions in error messages count bytes rather than characters, and Listener.onCharacter is
+     * called once per byte, with the byte as a char.
+     */
+    public final Node parse(Path input) throws IOException {
+        return doParse(input, Schema.PASS);
+    }
+
+    public final Node parse(Path input, Schema schema) throws IOException {
+        return doParse(input, schema);
+    }
+
+    /**
+     * Parses UTF-8 bytes from the stream, which is left open. As with parse(Path), Parser2 lexes the bytes
+     * themselves, so positions and onCharacter calls are per byte.
+     */
+    public final Node parse(InputStream input) throws IOException {
+        return doParse(input, Schema.PASS);
+    }
+
+    public final Node parse(InputStream input, Schema schema) throws IOException {
+        return doParse(input, schema);
+    }
+
+    protected Node doParse(InputStream input, Schema schema) throws IOException {
+        return doParse(new InputStreamReader(input, StandardCharsets.UTF_8), schema);
+    }
+
+    protected Node doParse(Path input, Schema schema) throws IOException {
+        try (Reader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            return doParse(reader, schema);
+        }
+    }
+
     protected void validate(RootNode document, Schema schema) {
+        validate(document, schema, null);
+    }
+
+    /**
+     * Validates in the pool when there is one; see ParallelValidation.
+     */
+    protected void validate(RootNode document, Schema schema, ForkJoinPool pool) {
         if (schema.equals(Schema.PASS)) {
             return;
         }
         if (document == null) {
             throw new RuntimeException("Cannot validate document in streaming mode.");
         }
-        List<SchemaNode> schemaNodes = schema.start.children;
-        List<Node> docNodes = document.children;
-        final List<String> validationResults = validate(docNodes, schemaNodes);
+        CompiledSchema compiled = schema.compile();
+        ValidationContext context = new ValidationContext();
+        if (pool == null) {
+            validate(document.children, compiled, compiled.firstChild[compiled.root()], context);
+        } else {
+            ParallelValidation.validate(document, compiled, context, pool);
+        }
+        report(context.errors);
+    }
+
+    static void report(List<String> validationResults) {
         if (validationResults.size() > 0) {
             validationResults.forEach(System.out::println);
             throw new ValidationException("Validation failed with " + validationResults.size() + " errors.", validationResults);
         }
     }
 
-    private List<String> validate(List<Node> docNodes, List<SchemaNode> schemaNodes) {
-        List<String> errors = new ArrayList<>();
-        SchemaNode schemaNode = schemaNodes.get(0);
-        int i = 0;
+    private void validate(List<Node> docNodes, CompiledSchema schema, int position, ValidationContext context) {
         boolean secondOrMore = false;
-        while (i < docNodes.size()) {
-            Node docNode = docNodes.get(i);
-            if (Schema.nameMatch(docNode, schemaNode)) {
-                validateType(docNode, schemaNode, errors);
-                if (docNode.children.size() > 0) {
-                    errors.addAll(validate(docNode.children, schemaNode.children));
-                } else if (schemaNode.hasMandatoryChildren()) {
-                    errors.add("Validation error V003: [" + docNode.name + "] requires children {line: " + docNode.line + "}");
-                }
-                i++;
-                if (schemaNode.single) {
-                    schemaNode = schemaNode.next;
-                    secondOrMore = false;
-                } else {
-                    secondOrMore = true;
-                }
+        for (Node docNode : docNodes) {
+            int state = position == CompiledSchema.NONE ? CompiledSchema.NONE
+                    : schema.match(position, schema.nameId(docNode.name), secondOrMore);
+            if (state < 0) {
+                context.errors.add(notExpected(docNode.name, docNode.line, schema, state));
+                return;
+            }
+            int flags = schema.flags[state];
+            validateType(docNode.name, docNode.line, docNode.getValue(), flags, context);
+            if (docNode.children.size() > 0) {
+                validate(docNode.children, schema, schema.firstChild[state], context);
+            } else if ((flags & CompiledSchema.MANDATORY_CHILDREN) != 0) {
+                context.errors.add(requiresChildren(docNode.name, docNode.line));
+            }
+            if ((flags & CompiledSchema.SINGLE) != 0) {
+                position = schema.next[state];
+                secondOrMore = false;
             } else {
-                if (!schemaNode.optional && !secondOrMore) {
-                    errors.add("Validation error V001: [" + docNode.name + "] not expected; expected = " + schemaNode.name + " {line: " + docNode.line + "}");
-                    return errors;
-                } else {
-                    schemaNode = schemaNode.next;
-                    if (schemaNode == null) {
-                        errors.add("Validation error V002: [" + docNode.name + "] not expected {line: " + docNode.line + "}");
-                        return errors;
-                    }
-                }
+                position = state;
+                secondOrMore = true;
             }
         }
-        return errors;
     }
 
+    //the V001 or V002 error for a negative result of CompiledSchema.match
+    static String notExpected(String name, int line, CompiledSchema schema, int result) {
+        if (result == CompiledSchema.NONE) {
+            return "Validation error V002: [" + name + "] not expected {line: " + line + "}";
+        }
+        return "Validation error V001: [" + name + "] not expected; expected = " + schema.expected(result) + " {line: " + line + "}";
+    }
+
+    static String requiresChildren(String name, int line) {
+        return "Validation error V003: [" + name + "] requires children {line: " + line + "}";
+    }
+
+    //the CompiledSchema type flag of each class of value
+    private static final ClassValue<Integer> TYPES = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            if (type == Long.class) {
+                return CompiledSchema.INTEGER;
+            } else if (type == Double.class) {
+                return CompiledSchema.DECIMAL;
+            } else if (type == Boolean.class) {
+                return CompiledSchema.BOOLEAN;
+            } else if (List.class.isAssignableFrom(type)) {
+                return CompiledSchema.LIST;
+            } else if (Duration.class.isAssignableFrom(type)) {
+                return CompiledSchema.DURATION;
+            } else if (DateTime.class.isAssignableFrom(type)) {
+                return CompiledSchema.DATE_TIME;
+            }
+            return 0;
+        }
+    };
+
     @SuppressWarnings("UnusedReturnValue")
-    private boolean validateType(Node docNode, SchemaNode schemaNode, List<String> errors) {
-        if (docNode.value == null) {
+    static boolean validateType(String name, int line, Object value, int flags, ValidationContext context) {
+        if (value == null) {
             return true;
         }
-        Object value = docNode.value;
-        boolean result = false;
+        Set<String> tokenids = context.tokenids;
+        List<String> errors = context.errors;
         if (value instanceof String) {
-            return (schemaNode.tokenid && isTokenId((String) value, docNode, schemaNode.schema, errors))
-                    || schemaNode.string
-                    || (schemaNode.tokenidref && refersToDeclaredId(docNode, schemaNode, (String)value, errors))
-                    || (schemaNode.token && isToken((String) value, docNode, errors));
-        } else if (value instanceof Long) {
-            result = schemaNode.integer;
-        } else if (value instanceof Double) {
-            result = schemaNode.decimal;
-        } else if (value instanceof Boolean) {
-            result = schemaNode.bool;
-        } else if (value instanceof List) {
-            result = schemaNode.list;
-        } else if (value instanceof Duration) {
-            result = schemaNode.duration;
-        } else if (value instanceof DateTime) {
-            result = schemaNode.dateTime;
+            return ((flags & CompiledSchema.TOKENID) != 0 && isTokenId((String) value, name, line, tokenids, errors))
+                    || (flags & CompiledSchema.STRING) != 0
+                    || ((flags & CompiledSchema.TOKENIDREF) != 0 && refersToDeclaredId(name, line, tokenids, (String) value, errors))
+                    || ((flags & CompiledSchema.TOKEN) != 0 && isToken((String) value, name, line, errors));
         }
+        boolean result = (flags & TYPES.get(value.getClass())) != 0;
         if (!result) {
-            errors.add("Validation error V004: [" + docNode.name + "] has value of wrong type {line: " + docNode.line + "}");
+            errors.add("Validation error V004: [" + name + "] has value of wrong type {line: " + line + "}");
         }
         return result;
     }
 
-    private boolean refersToDeclaredId(Node docNode, SchemaNode schemaNode, String value, List<String> errors) {
-        if (schemaNode.schema.tokenids.contains(value)) {
+    private static boolean refersToDeclaredId(String name, int line, Set<String> tokenids, String value, List<String> errors) {
+        if (tokenids.contains(value)) {
             return true;
         }
-        errors.add("Validation error V008: [" + docNode.name + ':' + value + "] tokenidref does not refer to a preceding tokenid {line: " + docNode.line + "}");
+        errors.add("Validation error V008: [" + name + ':' + value + "] tokenidref does not refer to a preceding tokenid {line: " + line + "}");
         return false;
     }
 
     private static final Pattern TOKEN = Pattern.compile("[a-z][a-zA-Z0-9_]*");
-    private boolean isToken(String value, Node docNode, List<String> errors) {
+    private static boolean isToken(String value, String name, int line, List<String> errors) {
         if ( ! TOKEN.matcher(value).matches() ) {
-            errors.add("Validation error V007: [" + docNode.name + ':' + value + "] token is not a valid token {line: " + docNode.line + "}");
+            errors.add("Validation error V007: [" + name + ':' + value + "] token is not a valid token {line: " + line + "}");
         }
         return true;
     }
 
-    private boolean isTokenId(String value, Node docNode, Schema schema, List<String> errors) {
+    private static boolean isTokenId(String value, String name, int line, Set<String> tokenids, List<String> errors) {
         if (TOKEN.matcher(value).matches()) {
-            if (schema.tokenids.add(value)) {
+            if (tokenids.add(value)) {
                 return true;
             } else {
-                errors.add("Validation error V005: [" + docNode.name + ':' + value + "] token ID is not unique {line: " + docNode.line + "}");
+                errors.add("Validation error V005: [" + name + ':' + value + "] token ID is not unique {line: " + line + "}");
             }
         } else {
-            errors.add("Validation error V006: [" + docNode.name + ':' + value + "] token ID is not a valid token {line: " + docNode.line + "}");
+            errors.add("Validation error V006: [" + name + ':' + value + "] token ID is not a valid token {line: " + line + "}");
         }
         return false;
     }
@@ -0,0 +1,109 @@
+package org.treeml;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * Parses a document handed over in chunks, as it arrives, rather than read from a Reader.
+ * Each chunk is lexed as soon as it is fed, so the parser's listeners hear about each node
+ * as its line completes; a chunk may end anywhere, even inside a name or a value.
+ * Feed chars or UTF-8 bytes, not both, then call finish.
+ * Not thread safe, but it holds no thread between feeds.
+ */
+@SuppressWarnings("WeakerAccess")
+public class PushParser {
+
+    private final Parser2 parser;
+    private final Schema schema;
+    private final Parser2.State state;
+    private Parser2.Group group = Parser2.Prolog.I;
+    //only needed for chunks that are not heap char arrays, and sized to the chunks seen
+    private char[] window;
+    private boolean chars, bytes, finished;
+
+    public PushParser(Parser2 parser) {
+        this(parser, Schema.PASS);
+    }
+
+    public PushParser(Parser2 parser, Schema schema) {
+        this.parser = parser;
+        this.schema = schema;
+        this.state = parser.start(schema);
+    }
+
+    public void feed(char[] chunk, int offset, int length) {
+        use(false);
+        //the chunk is the caller's: lex copies out any text left unfinished at its end
+        group = Parser2.lex(chunk, offset, offset + length, group, state);
+    }
+
+    /**
+     * Consumes the buffer's remaining chars.
+     */
+    public void feed(CharBuffer chunk) {
+        if (chunk.hasArray()) {
+            int from = chunk.arrayOffset() + chunk.position();
+            feed(chunk.array(), from, chunk.remaining());
+            chunk.position(chunk.limit());
+            return;
+        }
+        use(false);
+        while (chunk.hasRemaining()) {
+            int n = Math.min(window(chunk.remaining()).length, chunk.remaining());
+            chunk.get(window, 0, n);
+            group = Parser2.lex(window, 0, n, group, state);
+        }
+    }
+
+    /**
+     * Consumes the buffer's remaining bytes, which are UTF-8. A character may be split between chunks. The bytes
+     * are lexed without decoding them first, as ParserBase.parse(Path) says: positions in error messages count
+     * bytes, and onCharacter listeners get each byte as a char.
+     */
+    public void feed(ByteBuffer chunk) {
+        use(true);
+        while (chunk.hasRemaining()) {
+            int n = Math.min(window(chunk.remaining()).length, chunk.remaining());
+            int position = chunk.position();
+            for (int i = 0; i < n; i++) {
+                window[i] = (char) (chunk.get(position + i) & 0xFF);
+            }
+            chunk.position(position + n);
+            group = Parser2.lex(window, 0, n, group, state);
+        }
+    }
+
+    /**
+     * Ends the input, validates the document against the schema and returns it,
+     * or null when the parser is streaming.
+     */
+    public Node finish() {
+        if (finished) {
+            throw new IllegalStateException("The document has been finished");
+        }
+        finished = true;
+        return parser.finish(group, state, schema);
+    }
+
+    private void use(boolean bytes) {
+        if (finished) {
+            throw new IllegalStateException("The document has been finished");
+        }
+        if (bytes ? chars : this.bytes) {
+            throw new IllegalStateException("Feed either chars or bytes, not both");
+        }
+        if (bytes) {
+            this.bytes = true;
+            state.bytes = true;
+        } else {
+            chars = true;
+        }
+    }
+
+    private char[] window(int wanted) {
+        if (window == null || (window.length < wanted && window.length < Parser2.WINDOW)) {
+            window = new char[Math.min(Parser2.WINDOW, Math.max(wanted, 256))];
+        }
+        return window;
+    }
+}
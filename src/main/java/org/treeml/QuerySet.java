@@ -0,0 +1,318 @@
+package org.treeml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Many expressions evaluated together. The expressions are merged into a trie of their steps, so a path that
+ * several of them start with is walked once, and each node's children are scanned once for all the steps
+ * that continue from it, rather than once per expression.
+ * <p>
+ * eval returns the same values as calling Expression.eval for each expression in turn, and if any of them
+ * fails, throws the error that the first failing one would have thrown. A QuerySet is immutable and can be
+ * shared between threads.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class QuerySet {
+
+    private final CompiledExpression[] expressions;
+    private final Trie root = new Trie(null);
+    //the expressions that are literals, which need no document
+    private final int[] literals;
+
+    /**
+     * The steps that follow one path, and the expressions that end there.
+     */
+    private static final class Trie {
+        final CompiledExpression.Step step;
+        Trie[] next = new Trie[0];
+        int[] ends = new int[0];
+        //the steps of next by the child name they look for, and those that take any name
+        final Map<String, Branch> byName = new HashMap<>();
+        Branch any;
+        int branches;
+
+        Trie(CompiledExpression.Step step) {
+            this.step = step;
+        }
+
+        Trie add(CompiledExpression.Step step) {
+            for (Trie t : next) {
+                if (t.step.text.equals(step.text)) {
+                    return t;
+                }
+            }
+            Trie t = new Trie(step);
+            int i = next.length;
+            next = Arrays.copyOf(next, i + 1);
+            next[i] = t;
+            if (step.error != null) {
+                //fails before looking at the children
+                return t;
+            }
+            Branch branch = step.any ? any : byName.get(step.name);
+            if (branch == null) {
+                branch = new Branch(branches++);
+                if (step.any) {
+                    any = branch;
+                } else {
+                    byName.put(step.name, branch);
+                }
+            }
+            branch.add(step, i);
+            return t;
+        }
+    }
+
+    /**
+     * The steps from one trie node that look for the same name. The nth child of that name is the one an
+     * indexed step wants if its index is n, and the one a step without a predicate wants if n is 0, so these
+     * share a count; a step with a value to match tests every child of the name.
+     */
+    private static final class Branch {
+        final int id;
+        //steps without a predicate, and indexed steps sorted by index
+        int[] first = new int[0];
+        int[] indexed = new int[0];
+        int[] indexes = new int[0];
+        int[] valued = new int[0];
+
+        Branch(int id) {
+            this.id = id;
+        }
+
+        void add(CompiledExpression.Step step, int i) {
+            if (step.hasTestValue) {
+                valued = append(valued, i);
+            } else if (!step.hasIndex) {
+                first = append(first, i);
+            } else {
+                int at = 0;
+                while (at < indexes.length && indexes[at] <= step.index) {
+                    at++;
+                }
+                indexed = insert(indexed, at, i);
+                indexes = insert(indexes, at, step.index);
+            }
+        }
+    }
+
+    /**
+     * A scan of one node's children for the steps of a trie node.
+     */
+    private static final class Scan {
+        final Trie trie;
+        final Node[] found;
+        final RuntimeException[] failed;
+        //per branch, the children of its name so far, and the next of its indexed steps
+        final int[] counts;
+        final int[] nextIndexed;
+        int remaining;
+
+        Scan(Trie trie) {
+            this.trie = trie;
+            found = new Node[trie.next.length];
+            failed = new RuntimeException[trie.next.length];
+            counts = new int[trie.branches];
+            nextIndexed = new int[trie.branches];
+            remaining = trie.next.length;
+        }
+
+        void offer(Node child, Branch branch) {
+            int n = counts[branch.id]++;
+            if (n == 0) {
+                for (int i : branch.first) {
+                    found[i] = child;
+                    remaining--;
+                }
+            }
+            int at = nextIndexed[branch.id];
+            while (at < branch.indexes.length && branch.indexes[at] <= n) {
+                if (branch.indexes[at] == n) {
+                    found[branch.indexed[at]] = child;
+                    remaining--;
+                }
+                at++;
+            }
+            nextIndexed[branch.id] = at;
+            for (int i : branch.valued) {
+                if (found[i] != null || failed[i] != null) {
+                    continue;
+                }
+                try {
+                    if (trie.next[i].step.selects(child, n)) {
+                        found[i] = child;
+                        remaining--;
+                    }
+                } catch (RuntimeException e) {
+                    failed[i] = e;
+                    remaining--;
+                }
+            }
+        }
+    }
+
+    public QuerySet(String... expressions) {
+        this(Arrays.asList(expressions));
+    }
+
+    public QuerySet(Collection<String> expressions) {
+        this.expressions = new CompiledExpression[expressions.size()];
+        int[] literals = new int[0];
+        int i = 0;
+        for (String expression : expressions) {
+            CompiledExpression compiled = Expression.compile(expression);
+            this.expressions[i] = compiled;
+            if (compiled.literal) {
+                literals = append(literals, i);
+            } else {
+                Trie t = root;
+                for (CompiledExpression.Step step : compiled.steps) {
+                    t = t.add(step);
+                }
+                t.ends = append(t.ends, i);
+            }
+            i++;
+        }
+        this.literals = literals;
+    }
+
+    public int size() {
+        return expressions.length;
+    }
+
+    public List<String> getExpressions() {
+        List<String> result = new ArrayList<>(expressions.length);
+        for (CompiledExpression expression : expressions) {
+            result.add(expression.getText());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * The value of each expression, in the order they were given.
+     */
+    public Object[] eval(Node node) {
+        Object[] results = new Object[expressions.length];
+        RuntimeException[] errors = new RuntimeException[expressions.length];
+        for (int i : literals) {
+            results[i] = expressions[i].eval(node);
+        }
+        if (node == null) {
+            //as Expression.eval, which fails on the first step
+            for (int i = 0; i < expressions.length; i++) {
+                if (!expressions[i].literal) {
+                    errors[i] = new NullPointerException();
+                }
+            }
+        } else {
+            walk(node, root, results, errors);
+        }
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] != null) {
+                throw new RuntimeException("Syntax error: " + expressions[i].getText(), errors[i]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The value of each expression by its text.
+     */
+    public Map<String, Object> evalToMap(Node node) {
+        Object[] results = eval(node);
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (int i = 0; i < results.length; i++) {
+            result.put(expressions[i].getText(), results[i]);
+        }
+        return result;
+    }
+
+    private void walk(Node node, Trie trie, Object[] results, RuntimeException[] errors) {
+        for (int i : trie.ends) {
+            try {
+                results[i] = expressions[i].apply(node);
+            } catch (RuntimeException e) {
+                errors[i] = e;
+            }
+        }
+        int count = trie.next.length;
+        if (count == 0) {
+            return;
+        }
+        if (count == 1 || (trie.any == null && node.children.size() >= ChildIndex.MIN_CHILDREN)) {
+            //no other step to share the scan with, or the node's index finds each step's child without one
+            for (Trie next : trie.next) {
+                Node child;
+                try {
+                    child = CompiledExpression.child(node, next.step);
+                } catch (RuntimeException e) {
+                    fail(next, e, errors);
+                    continue;
+                }
+                if (child != null) {
+                    walk(child, next, results, errors);
+                }
+            }
+            return;
+        }
+        Scan scan = new Scan(trie);
+        for (int i = 0; i < count; i++) {
+            CompiledExpression.Step step = trie.next[i].step;
+            if (step.error != null) {
+                scan.failed[i] = step.error;
+                scan.remaining--;
+            } else if (step.hasIndex && step.index < 0) {
+                //never found
+                scan.remaining--;
+            }
+        }
+        for (Node child : node.children) {
+            if (scan.remaining == 0) {
+                break;
+            }
+            Branch named = trie.byName.get(child.name);
+            if (named != null) {
+                scan.offer(child, named);
+            }
+            if (trie.any != null) {
+                scan.offer(child, trie.any);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (scan.failed[i] != null) {
+                fail(trie.next[i], scan.failed[i], errors);
+            } else if (scan.found[i] != null) {
+                walk(scan.found[i], trie.next[i], results, errors);
+            }
+        }
+    }
+
+    //every expression that goes through the step fails with its error
+    private static void fail(Trie trie, RuntimeException error, RuntimeException[] errors) {
+        for (int i : trie.ends) {
+            errors[i] = error;
+        }
+        for (Trie next : trie.next) {
+            fail(next, error, errors);
+        }
+    }
+
+    private static int[] append(int[] array, int value) {
+        return insert(array, array.length, value);
+    }
+
+    private static int[] insert(int[] array, int at, int value) {
+        int[] result = new int[array.length + 1];
+        System.arraycopy(array, 0, result, 0, at);
+        result[at] = value;
+        System.arraycopy(array, at, result, at + 1, array.length - at);
+        return result;
+    }
+}
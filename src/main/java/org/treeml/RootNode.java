@@ -17,6 +17,10 @@ public class RootNode extends Node {
         return requires == null ? super.toString() : requires + "\r\n" + super.toString();
     }
 
+    /**
+     * Adds the node as the last child of the last node at depth - 1. DomListener keeps
+     * track of open nodes instead of walking down from the root like this.
+     */
     public void append(int depth, Node node) {
         if (node == null) {
             return;
@@ -25,12 +29,6 @@ public class RootNode extends Node {
         for (int i = 0; i < depth; i++) {
             parent = parent.children.get(parent.children.size() - 1);
         }
-        if (parent.children.size() > 0) {
-            Node lastChild = parent.children.get(parent.children.size() - 1);
-            lastChild.next = node;
-            node.previous = node;
-        }
-        node.parent = node;
-        parent.children.add(node);
+        parent.addChild(node);
     }
 }
@@ -9,10 +9,14 @@ import java.util.*;
 @SuppressWarnings({"Convert2streamapi", "WeakerAccess"})
 public class Schema {
 
-    Set<String> tokenids = new HashSet<>();
     static final Schema PASS = new Schema(new RootNode()) {
     };
     SchemaNode start = new SchemaNode(this);
+    /**
+     * Names and tokens of the documents parsed with this schema, which mostly share a vocabulary.
+     */
+    public final SymbolTable symbols = new SymbolTable();
+    private volatile CompiledSchema compiled;
 
     public Schema(Node schemaDocument) {
         //there is only one child of root in a schema
@@ -23,8 +27,18 @@ public class Schema {
         }
     }
 
-    static boolean nameMatch(Node node, SchemaNode sn) {
-        String nodeName = node.name;
+    /**
+     * The schema as tables for validation, built on first use.
+     */
+    public CompiledSchema compile() {
+        CompiledSchema result = compiled;
+        if (result == null) {
+            result = compiled = new CompiledSchema(this);
+        }
+        return result;
+    }
+
+    static boolean nameMatch(String nodeName, SchemaNode sn) {
         String snName = sn.name;
         return nodeName.equals(snName) || "token".equals(snName);
     }
@@ -0,0 +1,20 @@
+package org.treeml;
+
+/**
+ * Internal counterpart of Listener for readers that want names, values and tags as text still
+ * sitting in the lexer, rather than as Strings and objects. Each method is called just before the
+ * matching Listener event, and the text is only valid during the call: see State.length, charAt
+ * and getChars.
+ */
+interface SpanListener {
+
+    void onTagSpan(Parser2.State state);
+
+    void onNameSpan(Parser2.State state);
+
+    /**
+     * The text is the value's as written, without quotes, @ or escapes; group is the group that
+     * ended it. A BeforeValue group means the node has no value.
+     */
+    void onValueSpan(Parser2.State state, Parser2.Group group);
+}
@@ -0,0 +1,196 @@
+package org.treeml;
+
+/**
+ * Canonical Strings for names and tokens, looked up straight from the characters being lexed, so a name
+ * seen before costs a hash and a compare rather than a new String. Each distinct symbol also has a dense id.
+ * <p>
+ * One table can be shared by any number of parses on any number of threads: lookups read the tables
+ * without locking, and only adding a symbol synchronizes. Past the limit, symbols are no longer added
+ * and a lookup of a new one just makes a String, so documents of unique tokens cannot grow a shared table.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SymbolTable {
+
+    public static final int NONE = -1;
+
+    private static final class Table {
+        //the id + 1 of the symbol at each position, 0 being empty, probed linearly from the hash
+        final int[] slots;
+        final String[] symbols;
+
+        //at most half full
+        Table(int slots) {
+            this.slots = new int[slots];
+            this.symbols = new String[slots / 2];
+        }
+    }
+
+    private final int limit;
+    private volatile Table table = new Table(64);
+    private int size;
+
+    public SymbolTable() {
+        this(1 << 16);
+    }
+
+    public SymbolTable(int limit) {
+        this.limit = limit;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * The symbol with the id, which must have been handed out by this table.
+     */
+    public String symbol(int id) {
+        return table.symbols[id];
+    }
+
+    /**
+     * The symbols in order of their ids.
+     */
+    public synchronized String[] symbols() {
+        String[] result = new String[size];
+        System.arraycopy(table.symbols, 0, result, 0, size);
+        return result;
+    }
+
+    public String intern(String s) {
+        String symbol = symbol(s.toCharArray(), 0, s.length());
+        return symbol == null ? s : symbol;
+    }
+
+    public String intern(char[] chars, int offset, int length) {
+        String symbol = symbol(chars, offset, length);
+        return symbol == null ? new String(chars, offset, length) : symbol;
+    }
+
+    /**
+     * The text being collected by the lexer, as its canonical String.
+     */
+    String intern(Parser2.State state) {
+        String symbol;
+        if (state.mark >= 0) {
+            symbol = symbol(state.window, state.mark, state.pos - state.mark);
+        } else {
+            char[] chars = new char[state.length()];
+            state.getChars(chars, 0);
+            symbol = symbol(chars, 0, chars.length);
+        }
+        return symbol == null ? state.text() : symbol;
+    }
+
+    int id(Parser2.State state) {
+        if (state.mark >= 0) {
+            return id(state.window, state.mark, state.pos - state.mark);
+        }
+        //the text was copied out of the window: escaped, or split across two windows
+        char[] chars = new char[state.length()];
+        state.getChars(chars, 0);
+        return id(chars, 0, chars.length);
+    }
+
+    /**
+     * The id of the characters, adding them if they are new, or NONE when the table is full.
+     */
+    public int id(char[] chars, int offset, int length) {
+        int hash = hash(chars, offset, length);
+        int id = find(table, hash, chars, offset, length);
+        return id == NONE ? add(hash, chars, offset, length) : id;
+    }
+
+    //the canonical String of the characters, adding them if they are new, or null when the table is full
+    private String symbol(char[] chars, int offset, int length) {
+        int hash = hash(chars, offset, length);
+        //one read of the table, for both the probe and the symbol
+        Table t = table;
+        int id = find(t, hash, chars, offset, length);
+        return id == NONE ? addSymbol(hash, chars, offset, length) : t.symbols[id];
+    }
+
+    private static int hash(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+
+    private static int find(Table t, int hash, char[] chars, int offset, int length) {
+        int mask = t.slots.length - 1;
+        for (int i = hash & mask, slot; (slot = t.slots[i]) != 0; i = (i + 1) & mask) {
+            String symbol = t.symbols[slot - 1];
+            if (symbol == null) {
+                //added by another thread and not yet visible to this one
+                break;
+            }
+            if (symbol.hashCode() == hash && equals(symbol, chars, offset, length)) {
+                return slot - 1;
+            }
+        }
+        return NONE;
+    }
+
+    private synchronized String addSymbol(int hash, char[] chars, int offset, int length) {
+        int id = add(hash, chars, offset, length);
+        return id == NONE ? null : table.symbols[id];
+    }
+
+    private synchronized int add(int hash, char[] chars, int offset, int length) {
+        Table t = table;
+        int mask = t.slots.length - 1;
+        int i = hash & mask;
+        for (int slot; (slot = t.slots[i]) != 0; i = (i + 1) & mask) {
+            String symbol = t.symbols[slot - 1];
+            if (symbol.hashCode() == hash && equals(symbol, chars, offset, length)) {
+                return slot - 1;
+            }
+        }
+        if (size == limit) {
+            return NONE;
+        }
+        if (size == t.symbols.length) {
+            t = grow(t);
+            mask = t.slots.length - 1;
+            i = hash & mask;
+            while (t.slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+        }
+        int id = size++;
+        //the symbol before its slot, so a reader that sees the slot usually sees the symbol
+        t.symbols[id] = new String(chars, offset, length);
+        t.slots[i] = id + 1;
+        return id;
+    }
+
+    private Table grow(Table old) {
+        int slots = old.slots.length * 2;
+        Table t = new Table(slots);
+        System.arraycopy(old.symbols, 0, t.symbols, 0, size);
+        int mask = slots - 1;
+        for (int id = 0; id < size; id++) {
+            int i = t.symbols[id].hashCode() & mask;
+            while (t.slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            t.slots[i] = id + 1;
+        }
+        table = t;
+        return t;
+    }
+
+    private static boolean equals(String symbol, char[] chars, int offset, int length) {
+        if (symbol.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (symbol.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
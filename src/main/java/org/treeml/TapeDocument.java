@@ -0,0 +1,515 @@
+package org.treeml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed document held in parallel arrays instead of Nodes: about 30 bytes a node, plus the text of its value,
+ * against well over 100 for a Node. Nodes are ints, 0 being the root; names are ids into a table of the
+ * document's distinct names; values are a type and a long slot holding the number, the boolean, the position
+ * of the text in one shared char array, or the range of a list's items. Walk it with the int accessors or a
+ * Cursor, and make Nodes of any part with toNode.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class TapeDocument {
+
+    /**
+     * Value types. NO_VALUE and NULL values are both null.
+     */
+    public static final byte NO_VALUE = 0, NULL = 1, BOOLEAN = 2, LONG = 3, DOUBLE = 4, TOKEN = 5, STRING = 6, TIME = 7, LIST = 8;
+
+    /**
+     * No node: the parent of the root, the first child of a leaf, the next sibling of a last child.
+     */
+    public static final int NONE = -1;
+
+    private int size;
+    private int[] parents = new int[64];
+    private int[] firstChildren = new int[64];
+    private int[] nextSiblings = new int[64];
+    private int[] nameIds = new int[64];
+    private int[] lines = new int[64];
+    private byte[] types = new byte[64];
+    private long[] slots = new long[64];
+    private String[] names;
+    private char[] text = new char[1024];
+    private int textLength;
+    private byte[] itemTypes = new byte[16];
+    private long[] itemSlots = new long[16];
+    private int itemCount;
+    private final List<String> tags = new ArrayList<>();
+    //the text of string and time values is raw UTF-8, one byte per char
+    private boolean bytes;
+
+    private TapeDocument() {
+        add(NONE, NONE, 0);
+    }
+
+    public static TapeDocument parse(Reader input) throws IOException {
+        Builder builder = new Builder();
+        char[] window = new char[Parser2.WINDOW];
+        int n;
+        while ((n = input.read(window, 0, window.length)) != -1) {
+            builder.group = Parser2.lex(window, 0, n, builder.group, builder.state);
+        }
+        return builder.finish();
+    }
+
+    /**
+     * Parses UTF-8 bytes from the stream, which is left open.
+     */
+    public static TapeDocument parse(InputStream input) throws IOException {
+        Builder builder = new Builder();
+        builder.state.bytes = true;
+        builder.document.bytes = true;
+        char[] window = new char[Parser2.WINDOW];
+        byte[] bytes = new byte[Parser2.WINDOW];
+        int n;
+        while ((n = input.read(bytes, 0, bytes.length)) != -1) {
+            for (int i = 0; i < n; i++) {
+                window[i] = (char) (bytes[i] & 0xFF);
+            }
+            builder.group = Parser2.lex(window, 0, n, builder.group, builder.state);
+        }
+        return builder.finish();
+    }
+
+    public int root() {
+        return 0;
+    }
+
+    /**
+     * The number of nodes, including the root.
+     */
+    public int size() {
+        return size;
+    }
+
+    public List<String> tags() {
+        return Collections.unmodifiableList(tags);
+    }
+
+    public int parent(int node) {
+        return parents[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    public String name(int node) {
+        return node == 0 ? "root" : names[nameIds[node]];
+    }
+
+    /**
+     * The id of the node's name, the same for all nodes of the same name; the root's is NONE.
+     */
+    public int nameId(int node) {
+        return nameIds[node];
+    }
+
+    public boolean nameEquals(int node, String name) {
+        return name(node).equals(name);
+    }
+
+    public int line(int node) {
+        return lines[node];
+    }
+
+    public byte valueType(int node) {
+        return types[node];
+    }
+
+    /**
+     * The value as the Node would hold it.
+     */
+    public Object value(int node) {
+        if (types[node] != LIST) {
+            return value(types[node], slots[node]);
+        }
+        int count = itemCount(node);
+        int start = (int) (slots[node] >>> 32);
+        byte type = count == 0 ? NULL : itemTypes[start];
+        for (int i = start; i < start + count && (type == LONG || type == DOUBLE); i++) {
+            if (itemTypes[i] != type) {
+                type = NULL;
+            }
+        }
+        //homogeneous numbers as the DOM holds them
+        if (type == LONG) {
+            return new LongList(Arrays.copyOfRange(itemSlots, start, start + count));
+        } else if (type == DOUBLE) {
+            DoubleList list = new DoubleList();
+            for (int i = start; i < start + count; i++) {
+                list.add(Double.longBitsToDouble(itemSlots[i]));
+            }
+            return list;
+        }
+        List<Object> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(item(node, i));
+        }
+        return list;
+    }
+
+    public long longValue(int node) {
+        expect(node, LONG);
+        return slots[node];
+    }
+
+    public double doubleValue(int node) {
+        expect(node, DOUBLE);
+        return Double.longBitsToDouble(slots[node]);
+    }
+
+    public boolean booleanValue(int node) {
+        expect(node, BOOLEAN);
+        return slots[node] != 0;
+    }
+
+    public int itemCount(int node) {
+        return types[node] == LIST ? (int) slots[node] : 0;
+    }
+
+    public byte itemType(int node, int index) {
+        return itemTypes[itemIndex(node, index)];
+    }
+
+    public Object item(int node, int index) {
+        int i = itemIndex(node, index);
+        return value(itemTypes[i], itemSlots[i]);
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * The document as Nodes.
+     */
+    public RootNode toNode() {
+        RootNode root = new RootNode();
+        root.tags.addAll(tags);
+        addChildren(root, 0);
+        return root;
+    }
+
+    /**
+     * The node and its descendants as Nodes; the Node's parent is left null.
+     */
+    public Node toNode(int node) {
+        if (node == 0) {
+            return toNode();
+        }
+        Node result = new Node(name(node), value(node));
+        result.line = lines[node];
+        addChildren(result, node);
+        return result;
+    }
+
+    private void addChildren(Node parent, int node) {
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            parent.addChild(toNode(child));
+        }
+    }
+
+    private int itemIndex(int node, int index) {
+        if (index < 0 || index >= itemCount(node)) {
+            throw new IndexOutOfBoundsException(String.format("Item %s of %s", index, itemCount(node)));
+        }
+        return (int) (slots[node] >>> 32) + index;
+    }
+
+    private void expect(int node, byte type) {
+        if (types[node] != type) {
+            throw new IllegalStateException(String.format("Value of %s is not of type %s {line: %s}", name(node), type, lines[node]));
+        }
+    }
+
+    private Object value(byte type, long slot) {
+        switch (type) {
+            case BOOLEAN:
+                return slot != 0;
+            case LONG:
+                return slot;
+            case DOUBLE:
+                return Double.longBitsToDouble(slot);
+            case TOKEN:
+            case STRING:
+                return text(slot);
+            case TIME:
+                String time = text(slot);
+                return time.startsWith("P") ? new Duration(time) : new DateTime(time);
+            default:
+                return null;
+        }
+    }
+
+    private String text(long slot) {
+        int offset = (int) (slot >>> 32), length = (int) slot;
+        if (bytes) {
+            for (int i = offset; i < offset + length; i++) {
+                if (text[i] >= 0x80) {
+                    byte[] utf8 = new byte[length];
+                    for (int j = 0; j < length; j++) {
+                        utf8[j] = (byte) text[offset + j];
+                    }
+                    return new String(utf8, StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return new String(text, offset, length);
+    }
+
+    private int add(int parent, int nameId, int line) {
+        if (size == parents.length) {
+            int capacity = size * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            types = Arrays.copyOf(types, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+        }
+        int node = size++;
+        parents[node] = parent;
+        firstChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        nameIds[node] = nameId;
+        lines[node] = line;
+        return node;
+    }
+
+    //the text being collected, appended to the shared text, as a slot
+    private long addText(Parser2.State state) {
+        int length = state.length();
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+        }
+        state.getChars(text, textLength);
+        long slot = (long) textLength << 32 | length;
+        textLength += length;
+        return slot;
+    }
+
+    private void addItem(byte type, long slot) {
+        if (itemCount == itemTypes.length) {
+            itemTypes = Arrays.copyOf(itemTypes, itemCount * 2);
+            itemSlots = Arrays.copyOf(itemSlots, itemCount * 2);
+        }
+        itemTypes[itemCount] = type;
+        itemSlots[itemCount] = slot;
+        itemCount++;
+    }
+
+    private void trim() {
+        parents = Arrays.copyOf(parents, size);
+        firstChildren = Arrays.copyOf(firstChildren, size);
+        nextSiblings = Arrays.copyOf(nextSiblings, size);
+        nameIds = Arrays.copyOf(nameIds, size);
+        lines = Arrays.copyOf(lines, size);
+        types = Arrays.copyOf(types, size);
+        slots = Arrays.copyOf(slots, size);
+        text = Arrays.copyOf(text, textLength);
+        itemTypes = Arrays.copyOf(itemTypes, itemCount);
+        itemSlots = Arrays.copyOf(itemSlots, itemCount);
+    }
+
+    /**
+     * A position in the document that can be moved around it, so it can be walked without ints.
+     */
+    public final class Cursor {
+        private int node;
+
+        private Cursor() {
+        }
+
+        public int node() {
+            return node;
+        }
+
+        public void moveTo(int node) {
+            this.node = node;
+        }
+
+        public boolean toFirstChild() {
+            return move(firstChildren[node]);
+        }
+
+        public boolean toNextSibling() {
+            return move(nextSiblings[node]);
+        }
+
+        public boolean toParent() {
+            return move(parents[node]);
+        }
+
+        private boolean move(int to) {
+            if (to == NONE) {
+                return false;
+            }
+            node = to;
+            return true;
+        }
+
+        public String getName() {
+            return name(node);
+        }
+
+        public boolean nameEquals(String name) {
+            return TapeDocument.this.nameEquals(node, name);
+        }
+
+        public int getLine() {
+            return lines[node];
+        }
+
+        public byte getValueType() {
+            return types[node];
+        }
+
+        public Object getValue() {
+            return value(node);
+        }
+
+        public long getLong() {
+            return longValue(node);
+        }
+
+        public double getDouble() {
+            return doubleValue(node);
+        }
+
+        public boolean getBoolean() {
+            return booleanValue(node);
+        }
+
+        public Node toNode() {
+            return TapeDocument.this.toNode(node);
+        }
+    }
+
+    /**
+     * Fills a document from the lexer, taking names and values while they are still in its window.
+     */
+    private static final class Builder implements Listener, SpanListener {
+        final TapeDocument document = new TapeDocument();
+        final Parser2.State state;
+        Parser2.Group group = Parser2.Prolog.I;
+        //the last node at each depth, and the depth of the last node
+        private int[] open = new int[16];
+        private int depth = -1;
+        //the node being read
+        private int current;
+        private boolean valueSet;
+        private boolean list;
+        //the document's own, so its name ids are dense
+        private final SymbolTable names = new SymbolTable(Integer.MAX_VALUE);
+
+        Builder() {
+            state = new Parser2.State(Collections.singletonList(this));
+            state.spans = this;
+        }
+
+        TapeDocument finish() {
+            Parser2.end(group, state);
+            document.names = names.symbols();
+            document.trim();
+            return document;
+        }
+
+        @Override
+        public void onTagSpan(Parser2.State state) {
+            document.tags.add(state.string());
+        }
+
+        @Override
+        public void onNameSpan(Parser2.State state) {
+            int indent = state.indent;
+            if (indent < 0 || indent > depth + 1) {
+                //the parser rejects the indent when the node is added
+                return;
+            }
+            int parent = indent == 0 ? 0 : open[indent - 1];
+            int node = document.add(parent, names.id(state), state.lineNumber);
+            if (indent <= depth && document.parents[open[indent]] == parent) {
+                document.nextSiblings[open[indent]] = node;
+            } else {
+                document.firstChildren[parent] = node;
+            }
+            if (indent == open.length) {
+                open = Arrays.copyOf(open, open.length * 2);
+            }
+            open[indent] = node;
+            depth = indent;
+            current = node;
+            valueSet = false;
+            list = false;
+        }
+
+        @Override
+        public void onValueSpan(Parser2.State state, Parser2.Group group) {
+            byte type = NULL;
+            long slot = 0;
+            if (group instanceof Parser2.BeforeValue) {
+                //a { or } where a value could be
+                type = NULL;
+            } else if (state.type == Parser2.Types.tokenValue) {
+                if (state.textEquals(Parser2.TRUE) || state.textEquals(Parser2.FALSE)) {
+                    type = BOOLEAN;
+                    slot = state.textEquals(Parser2.TRUE) ? 1 : 0;
+                } else if (!state.textEquals(Parser2.NULL)) {
+                    type = TOKEN;
+                    slot = document.addText(state);
+                }
+            } else if (state.type == Parser2.Types.stringValue) {
+                type = STRING;
+                slot = document.addText(state);
+            } else if (state.type == Parser2.Types.longValue) {
+                type = LONG;
+                slot = state.longValue();
+            } else if (state.type == Parser2.Types.doubleValue) {
+                type = DOUBLE;
+                slot = Double.doubleToRawLongBits(Double.parseDouble(state.text()));
+            } else if (state.type == Parser2.Types.timeValue) {
+                type = TIME;
+                slot = document.addText(state);
+            }
+            if (list) {
+                document.addItem(type, slot);
+                document.slots[current]++;
+            } else {
+                document.types[current] = type;
+                document.slots[current] = slot;
+            }
+            valueSet = true;
+        }
+
+        @Override
+        public void onDeclareList(int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+            if (list) {
+                return;
+            }
+            list = true;
+            long start = (long) document.itemCount << 32;
+            if (valueSet) {
+                document.addItem(document.types[current], document.slots[current]);
+                start++;
+            }
+            //qualified, as Listener.LIST would hide it
+            document.types[current] = TapeDocument.LIST;
+            document.slots[current] = start;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package org.treeml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a TreeML document one event at a time, as an alternative to implementing Listener.
+ * Each node is reported as START_NODE, then LIST_START if its value is a list, then its values,
+ * then its children, then END_NODE. Names and values stay as characters until asked for:
+ * nameEquals, getTextCharacters and getLong, for instance, build no Strings.
+ * <p>
+ * The events of a node are reported once its line has been read, and its END_NODE once the next
+ * node at the same or a lower depth (or the end of the document) has been.
+ */
+@SuppressWarnings("WeakerAccess")
+public class TreeMLReader implements Closeable {
+
+    public enum Event {
+        TAG, START_NODE, VALUE, LIST_START, END_NODE, END_DOCUMENT
+    }
+
+    private final Reader reader;
+    private final InputStream stream;
+    private final byte[] bytes;
+    private final char[] window = new char[Parser2.WINDOW];
+    private final Parser2.State state;
+    private final SymbolTable symbols = new SymbolTable();
+    private Parser2.Group group = Parser2.Prolog.I;
+
+    //events read, in order: [head, ready) can be handed out, [ready, written) belong to the line being read
+    private Slot[] slots = new Slot[16];
+    private int head, ready, written;
+    private Slot current;
+    //the LIST_START slot of the node being read, which stays empty unless the value is a list
+    private int listSlot;
+    //nodes started and not yet ended, which is also the depth of the next child
+    private int open;
+    //the depth of the node whose children are being skipped, and whether the node being read is one of them
+    private int skipDepth = -1;
+    private boolean skipping;
+
+    public TreeMLReader(Reader input) {
+        this(input, null);
+    }
+
+    /**
+     * Reads UTF-8 bytes directly, as Parser2.parse(InputStream) does.
+     */
+    public TreeMLReader(InputStream input) {
+        this(null, input);
+    }
+
+    private TreeMLReader(Reader reader, InputStream stream) {
+        this.reader = reader;
+        this.stream = stream;
+        this.bytes = stream == null ? null : new byte[Parser2.WINDOW];
+        Capture capture = new Capture();
+        state = new Parser2.State(Collections.singletonList(capture));
+        state.spans = capture;
+        state.bytes = stream != null;
+    }
+
+    /**
+     * Moves to the next event and returns it. Syntax errors are thrown as the parser throws them.
+     */
+    public Event next() throws IOException {
+        if (current != null && current.event == Event.END_DOCUMENT) {
+            throw new NoSuchElementException("The document has ended");
+        }
+        do {
+            while (head == ready) {
+                if (head == written) {
+                    head = ready = written = 0;
+                }
+                if (state.window != null) {
+                    //resume where the last event paused the lexer
+                    group = Parser2.lex(window, state.pos, state.limit, group, state);
+                } else {
+                    int n = fill();
+                    if (n == -1) {
+                        end();
+                    } else {
+                        group = Parser2.lex(window, 0, n, group, state);
+                    }
+                }
+            }
+            current = slots[head++];
+        } while (current.event == null);
+        return current.event;
+    }
+
+    public boolean hasNext() {
+        return current == null || current.event != Event.END_DOCUMENT;
+    }
+
+    private int fill() throws IOException {
+        if (reader != null) {
+            return reader.read(window, 0, window.length);
+        }
+        int n = stream.read(bytes, 0, bytes.length);
+        for (int i = 0; i < n; i++) {
+            window[i] = (char) (bytes[i] & 0xFF);
+        }
+        return n;
+    }
+
+    private void end() {
+        group = Parser2.end(group, state);
+        state.pause = false;
+        while (open > 0) {
+            endNode();
+        }
+        add(Event.END_DOCUMENT, -1, null);
+        ready = written;
+    }
+
+    /**
+     * Skips the rest of the current node: its remaining values and all its children.
+     * The next event is the node's END_NODE.
+     */
+    public void skipChildren() {
+        Event event = getEvent();
+        if (event != Event.START_NODE && event != Event.LIST_START && event != Event.VALUE) {
+            throw new IllegalStateException("Not inside a node: " + event);
+        }
+        while (head < ready && slots[head].event != Event.START_NODE && slots[head].event != Event.END_NODE
+                && slots[head].event != Event.END_DOCUMENT) {
+            head++;
+        }
+        skipDepth = current.depth;
+    }
+
+    public Event getEvent() {
+        if (current == null) {
+            throw new IllegalStateException("next() has not been called");
+        }
+        return current.event;
+    }
+
+    /**
+     * The depth of the node the event belongs to; top-level nodes are at depth 0 and tags at -1.
+     */
+    public int getDepth() {
+        getEvent();
+        return current.depth;
+    }
+
+    public int getLine() {
+        getEvent();
+        return current.line;
+    }
+
+    /**
+     * The name of the node, at START_NODE.
+     */
+    public String getName() {
+        expect(Event.START_NODE);
+        return symbols.intern(current.text, 0, current.length);
+    }
+
+    public boolean nameEquals(String name) {
+        expect(Event.START_NODE);
+        return textEquals(name);
+    }
+
+    /**
+     * The type of the value, or null for an empty item of a list such as "a, {".
+     */
+    public Parser2.Types getValueType() {
+        expect(Event.VALUE);
+        return current.type;
+    }
+
+    /**
+     * The characters of a name, value or tag, as written but without quotes, escapes, @ or
+     * underscores between digits. They are only valid until the next call to next().
+     * When reading bytes, characters above 0x7F are single bytes of UTF-8; getText decodes them.
+     */
+    public char[] getTextCharacters() {
+        getEvent();
+        return current.text;
+    }
+
+    public int getTextLength() {
+        getEvent();
+        return current.length;
+    }
+
+    public String getText() {
+        getEvent();
+        if (state.bytes) {
+            for (int i = 0; i < current.length; i++) {
+                if (current.text[i] >= 0x80) {
+                    byte[] utf8 = new byte[current.length];
+                    for (int j = 0; j < current.length; j++) {
+                        utf8[j] = (byte) current.text[j];
+                    }
+                    return new String(utf8, StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return new String(current.text, 0, current.length);
+    }
+
+    /**
+     * The value as a Listener would receive it: a String, Boolean, Long, Double, DateTime, Duration or null.
+     */
+    public Object getValue() {
+        Parser2.Types type = getValueType();
+        if (type == null) {
+            return null;
+        }
+        switch (type) {
+            case tokenValue:
+                if (textEquals(Parser2.NULL)) {
+                    return null;
+                } else if (textEquals(Parser2.TRUE)) {
+                    return true;
+                } else if (textEquals(Parser2.FALSE)) {
+                    return false;
+                }
+                return symbols.intern(current.text, 0, current.length);
+            case longValue:
+                return getLong();
+            case doubleValue:
+                return getDouble();
+            case timeValue:
+                String text = getText();
+                return text.startsWith("P") ? new Duration(text) : new DateTime(text);
+            default:
+                return getText();
+        }
+    }
+
+    public long getLong() {
+        expect(Event.VALUE);
+        int length = current.length;
+        char[] text = current.text;
+        boolean negative = length > 0 && text[0] == '-';
+        int i = negative ? 1 : 0;
+        if (i == length || length > 18) {
+            return Long.parseLong(getText());
+        }
+        long value = 0;
+        for (; i < length; i++) {
+            char c = text[i];
+            if (c < '0' || c > '9') {
+                return Long.parseLong(getText());
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    public double getDouble() {
+        expect(Event.VALUE);
+        return Double.parseDouble(getText());
+    }
+
+    public boolean getBoolean() {
+        expect(Event.VALUE);
+        if (current.type == Parser2.Types.tokenValue && textEquals(Parser2.TRUE)) {
+            return true;
+        } else if (current.type == Parser2.Types.tokenValue && textEquals(Parser2.FALSE)) {
+            return false;
+        }
+        throw new RuntimeException(String.format("Not a boolean: %s {line %s}", getText(), current.line));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        } else {
+            stream.close();
+        }
+    }
+
+    private void expect(Event event) {
+        if (getEvent() != event) {
+            throw new IllegalStateException(String.format("Expected %s, at %s", event, current.event));
+        }
+    }
+
+    private boolean textEquals(String s) {
+        if (current.length != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < current.length; i++) {
+            if (current.text[i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Slot add(Event event, int depth, Parser2.State text) {
+        if (written == slots.length) {
+            Slot[] grown = new Slot[slots.length * 2];
+            System.arraycopy(slots, 0, grown, 0, slots.length);
+            slots = grown;
+        }
+        Slot slot = slots[written];
+        if (slot == null) {
+            slot = slots[written] = new Slot();
+        }
+        written++;
+        slot.event = event;
+        slot.depth = depth;
+        slot.line = state.lineNumber;
+        slot.type = null;
+        slot.length = 0;
+        if (text != null) {
+            int length = text.length();
+            if (slot.text.length < length) {
+                slot.text = new char[Math.max(length, slot.text.length * 2)];
+            }
+            text.getChars(slot.text, 0);
+            slot.length = length;
+        }
+        return slot;
+    }
+
+    private void endNode() {
+        open--;
+        if (skipDepth >= 0 && open > skipDepth) {
+            return;
+        }
+        if (open == skipDepth) {
+            skipDepth = -1;
+        }
+        add(Event.END_NODE, open, null);
+    }
+
+    //hands out the events read so far and stops the lexer until they have been taken
+    private void publish() {
+        if (ready < written) {
+            ready = written;
+            state.pause = true;
+        }
+    }
+
+    private static final class Slot {
+        Event event;
+        int depth;
+        int line;
+        Parser2.Types type;
+        char[] text = new char[32];
+        int length;
+    }
+
+    private final class Capture implements Listener, SpanListener {
+
+        @Override
+        public void onTagSpan(Parser2.State state) {
+            add(Event.TAG, -1, state);
+            publish();
+        }
+
+        @Override
+        public void onNameSpan(Parser2.State state) {
+            int depth = state.indent;
+            while (open > depth && open > 0) {
+                endNode();
+            }
+            skipping = skipDepth >= 0 && depth > skipDepth;
+            open = depth + 1;
+            if (!skipping) {
+                add(Event.START_NODE, depth, state);
+                listSlot = written;
+                add(null, depth, null);
+            }
+        }
+
+        @Override
+        public void onValueSpan(Parser2.State state, Parser2.Group group) {
+            if (skipping) {
+                return;
+            }
+            if (group instanceof Parser2.BeforeValue) {
+                //a { or } where a value could be: an empty list item, or no value at all
+                if (slots[listSlot].event == Event.LIST_START) {
+                    add(Event.VALUE, open - 1, null);
+                }
+                return;
+            }
+            add(Event.VALUE, open - 1, state).type = state.type;
+        }
+
+        @Override
+        public void onDeclareList(int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+            if (!skipping) {
+                slots[listSlot].event = Event.LIST_START;
+            }
+        }
+
+        @Override
+        public void onAddNode(int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+            publish();
+        }
+    }
+}
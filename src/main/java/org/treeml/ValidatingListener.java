@@ -0,0 +1,169 @@
+package org.treeml;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Validates a document against a schema while it is parsed, so that streaming parses can be validated.
+ * Rather than nodes it keeps, for each open node, where its sibling list has got to in the schema,
+ * and reports the same errors as ParserBase.validate, in the same order, when the document ends.
+ * Parser2 adds one for itself when streaming with a schema.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ValidatingListener implements Listener {
+
+    private final CompiledSchema compiled;
+    private ValidationContext context;
+    private List<String> errors;
+    private Level[] levels = new Level[8];
+    //the depth of the deepest open node
+    private int depth;
+    //the value of the node being read, as the DOM would hold it; of a number only the type is checked
+    private Object value;
+    private boolean list;
+
+    public ValidatingListener(Schema schema) {
+        this.compiled = schema.compile();
+    }
+
+    /**
+     * A sibling list and its open node.
+     */
+    private static final class Level {
+        //false when the parent was not matched, so the list is not validated
+        boolean active;
+        //the state reached in the list, as CompiledSchema.match takes it
+        int position;
+        boolean secondOrMore;
+        //a node of the list was not expected, so the rest of it is not validated
+        boolean dead;
+        String name;
+        int line;
+        //the state the open node matched, or NONE
+        int matched;
+        boolean hasChildren;
+    }
+
+    @Override
+    public int events() {
+        return NODE_NAME | VALUE | LIST | NODE;
+    }
+
+    @Override
+    public void onStart() {
+        context = new ValidationContext();
+        errors = context.errors;
+        depth = -1;
+        Level top = level(0);
+        top.active = true;
+        top.position = compiled.firstChild[compiled.root()];
+        top.secondOrMore = false;
+        top.dead = false;
+    }
+
+    @Override
+    public void onEnd() {
+        close(0);
+        ParserBase.report(errors);
+    }
+
+    @Override
+    public void onNodeName(String name, int indent, int index, int lineNumber, int lineIndex, Parser2.Group name1) {
+        if (indent < 0 || indent > depth + 1) {
+            //the parser rejects the indent when the node is added
+            return;
+        }
+        close(indent);
+        Level level = level(indent);
+        if (indent > 0) {
+            Level parent = levels[indent - 1];
+            if (!parent.hasChildren) {
+                parent.hasChildren = true;
+                level.active = parent.matched != CompiledSchema.NONE;
+                if (level.active) {
+                    level.position = compiled.firstChild[parent.matched];
+                    level.secondOrMore = false;
+                    level.dead = false;
+                }
+            }
+        }
+        depth = indent;
+        level.name = name;
+        level.line = lineNumber;
+        level.hasChildren = false;
+        level.matched = level.active && !level.dead ? match(level, name, lineNumber) : CompiledSchema.NONE;
+        value = null;
+        list = false;
+    }
+
+    @Override
+    public void onAddValue(Object value, Parser2.Types type, int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+        this.value = value;
+    }
+
+    @Override
+    public void onAddLong(long value, int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+        this.value = 0L;
+    }
+
+    @Override
+    public void onAddDouble(double value, int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+        this.value = 0.0;
+    }
+
+    @Override
+    public void onDeclareList(int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+        list = true;
+    }
+
+    @Override
+    public void onAddNode(int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+        Level level = levels[depth];
+        if (level.matched != CompiledSchema.NONE) {
+            ParserBase.validateType(level.name, level.line, list ? Collections.emptyList() : value,
+                    compiled.flags[level.matched], context);
+        }
+    }
+
+    //the state of the next node of the list, as ParserBase.validate finds it
+    private int match(Level level, String name, int line) {
+        int state = level.position == CompiledSchema.NONE ? CompiledSchema.NONE
+                : compiled.match(level.position, compiled.nameId(name), level.secondOrMore);
+        if (state < 0) {
+            errors.add(ParserBase.notExpected(name, line, compiled, state));
+            level.dead = true;
+            return CompiledSchema.NONE;
+        }
+        if ((compiled.flags[state] & CompiledSchema.SINGLE) != 0) {
+            level.position = compiled.next[state];
+            level.secondOrMore = false;
+        } else {
+            level.position = state;
+            level.secondOrMore = true;
+        }
+        return state;
+    }
+
+    //ends the open nodes at the depth and below
+    private void close(int to) {
+        for (; depth >= to; depth--) {
+            Level level = levels[depth];
+            if (level.matched != CompiledSchema.NONE && !level.hasChildren
+                    && (compiled.flags[level.matched] & CompiledSchema.MANDATORY_CHILDREN) != 0) {
+                errors.add(ParserBase.requiresChildren(level.name, level.line));
+            }
+        }
+    }
+
+    private Level level(int depth) {
+        if (depth == levels.length) {
+            Level[] grown = new Level[levels.length * 2];
+            System.arraycopy(levels, 0, grown, 0, levels.length);
+            levels = grown;
+        }
+        if (levels[depth] == null) {
+            levels[depth] = new Level();
+        }
+        return levels[depth];
+    }
+}
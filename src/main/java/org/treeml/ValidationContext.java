@@ -0,0 +1,21 @@
+package org.treeml;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What one validation run collects: the token IDs declared so far and the errors found.
+ * A Schema holds none of it, so one schema can validate any number of documents, on any number of threads.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ValidationContext {
+
+    final Set<String> tokenids = new HashSet<>();
+    final List<String> errors = new ArrayList<>();
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
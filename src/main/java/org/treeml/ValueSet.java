@@ -0,0 +1,486 @@
+package org.treeml;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of node names and values that takes a fraction of the memory of a HashSet. Each value is kept as a type
+ * byte and its bytes (UTF-8 for text) in one growing array, and found through an open addressing table of ints,
+ * so a value costs its bytes and about 20 more rather than a String, an entry and a box. Values are equal when
+ * equals says so, as in a HashSet; those of other types than the parser makes, and text with a surrogate not
+ * in a pair, are kept as they are.
+ * <p>
+ * Given an expected size and a false positive rate, a Bloom filter in front answers most values that are not in
+ * the set without looking at the table. Values keep their insertion order, and can be read back by position.
+ * Values cannot be removed, and adding is not thread safe; reading a set no longer changing is.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ValueSet extends AbstractSet<Object> {
+
+    private static final byte NULL = 'N', TRUE = 'T', FALSE = 'F', STRING = 'S', LONG = 'L', DOUBLE = 'D',
+            DATE_TIME = 'A', DURATION = 'P', OTHER = 'O';
+
+    private byte[] bytes = new byte[256];
+    private int used;
+    //where each value starts, by position, and its hash
+    private int[] starts = new int[16];
+    private int[] hashes = new int[16];
+    private int size;
+    //the position + 1 of the value at each slot, 0 being empty, probed linearly from the hash
+    private int[] slots = new int[32];
+    //values of other types, by their position in others, which is what their bytes hold
+    private final List<Object> others = new ArrayList<>();
+    private final Map<Object, Integer> otherIndex = new HashMap<>();
+
+    private long[] bloom;
+    private int bloomHashes;
+
+    public ValueSet() {
+    }
+
+    /**
+     * A set with a Bloom filter sized for expectedSize values to give about the false positive rate.
+     */
+    public ValueSet(int expectedSize, double falsePositiveRate) {
+        sizeBloom(expectedSize, falsePositiveRate);
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize) - 1) << 1;
+        starts = new int[capacity];
+        hashes = new int[capacity];
+        slots = new int[capacity * 2];
+    }
+
+    private void sizeBloom(int expectedSize, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        long bits = (long) Math.ceil(-Math.max(1, expectedSize) * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        bloom = new long[(int) Math.min(Integer.MAX_VALUE / 64, (bits + 63) / 64)];
+        bloomHashes = Math.max(1, (int) Math.round((double) bloom.length * 64 / Math.max(1, expectedSize) * Math.log(2)));
+    }
+
+    /**
+     * Puts a Bloom filter sized for the values now in the set in front of it, in place of any it had, for a set
+     * that was filled without knowing how many values it would get.
+     */
+    void filter(double falsePositiveRate) {
+        sizeBloom(size, falsePositiveRate);
+        for (int i = 0; i < size; i++) {
+            addToBloom(hashes[i]);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return indexOf(value) >= 0;
+    }
+
+    /**
+     * The position of the value, or -1. The value is hashed as it is, and only encoded to compare it with one of
+     * the same hash, so a value the Bloom filter rules out costs no allocation.
+     */
+    public int indexOf(Object value) {
+        byte type = type(value);
+        Integer other = type == OTHER ? otherIndex.get(value) : null;
+        if (type == OTHER && other == null) {
+            return -1;
+        }
+        return find(hash(type, value, other), type, value, other);
+    }
+
+    /**
+     * Whether any of the sets holds the value, which is hashed once for all of them.
+     */
+    static boolean anyContains(List<ValueSet> sets, Object value) {
+        byte type = type(value);
+        if (type == OTHER) {
+            //hashed by its position in each set
+            for (ValueSet set : sets) {
+                if (set.indexOf(value) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int hash = hash(type, value, null);
+        for (ValueSet set : sets) {
+            if (set.find(hash, type, value, null) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int find(int hash, byte type, Object value, Integer other) {
+        if (bloom != null && !mightContain(hash)) {
+            return -1;
+        }
+        byte[] key = null;
+        int mask = slots.length - 1;
+        for (int i = hash & mask, slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+            if (hashes[slot - 1] == hash) {
+                if (key == null) {
+                    key = encode(type, value, other);
+                }
+                if (equals(slot - 1, key)) {
+                    return slot - 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean add(Object value) {
+        byte type = type(value);
+        Integer other = type == OTHER ? otherIndex.get(value) : null;
+        if (type == OTHER && other == null) {
+            other = others.size();
+            others.add(value);
+            otherIndex.put(value, other);
+        }
+        int hash = hash(type, value, other);
+        byte[] key = encode(type, value, other);
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+            if (hashes[slot - 1] == hash && equals(slot - 1, key)) {
+                return false;
+            }
+        }
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        if (used + key.length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, used + key.length));
+        }
+        System.arraycopy(key, 0, bytes, used, key.length);
+        starts[size] = used;
+        hashes[size] = hash;
+        used += key.length;
+        slots[i] = size + 1;
+        size++;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        if (bloom != null) {
+            addToBloom(hash);
+        }
+        return true;
+    }
+
+    /**
+     * The value at the position, which is an equal value rather than the one added, except for other types.
+     */
+    public Object get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index: %s, Size: %s", i, size));
+        }
+        int start = starts[i] + 1;
+        int end = i + 1 < size ? starts[i + 1] : used;
+        switch (bytes[start - 1]) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case STRING:
+                return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            case LONG:
+                return getLong(start);
+            case DOUBLE:
+                return Double.longBitsToDouble(getLong(start));
+            case DATE_TIME:
+                return new DateTime(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            case DURATION:
+                return new Duration(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            default:
+                return others.get((int) getLong(start));
+        }
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return new Iterator<Object>() {
+            int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < size;
+            }
+
+            @Override
+            public Object next() {
+                if (i >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(i++);
+            }
+        };
+    }
+
+    /**
+     * Whether write can keep every value, which it cannot for values of other types.
+     */
+    boolean writable() {
+        return others.isEmpty();
+    }
+
+    /**
+     * Writes the values, which must be writable, for read. A Bloom filter is not written.
+     */
+    void write(DataOutput out) throws IOException {
+        if (!writable()) {
+            throw new IllegalStateException("Values of other types cannot be written");
+        }
+        out.writeInt(size);
+        out.writeInt(used);
+        out.write(bytes, 0, used);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(starts[i]);
+        }
+    }
+
+    static ValueSet read(DataInput in) throws IOException {
+        ValueSet set = new ValueSet();
+        int size = in.readInt();
+        int used = in.readInt();
+        if (size < 0 || used < size) {
+            throw new IOException(String.format("Corrupt value set {size: %s, bytes: %s}", size, used));
+        }
+        set.bytes = new byte[Math.max(1, used)];
+        in.readFully(set.bytes, 0, used);
+        set.starts = new int[Math.max(1, size)];
+        set.hashes = new int[Math.max(1, size)];
+        for (int i = 0; i < size; i++) {
+            int start = in.readInt();
+            if (start < (i == 0 ? 0 : set.starts[i - 1] + 1) || start >= used) {
+                throw new IOException("Corrupt value set: value " + i + " starts at " + start);
+            }
+            if ("NTFSLDAP".indexOf(set.bytes[start]) < 0) {
+                throw new IOException("Corrupt value set: value " + i + " has type " + set.bytes[start]);
+            }
+            set.starts[i] = start;
+        }
+        set.used = used;
+        set.size = size;
+        for (int i = 0; i < size; i++) {
+            int end = i + 1 < size ? set.starts[i + 1] : used;
+            set.hashes[i] = hash(set.bytes, set.starts[i], end);
+        }
+        set.slots = new int[Integer.highestOneBit(Math.max(16, size)) << 2];
+        set.fill();
+        return set;
+    }
+
+    //the type byte the value is encoded with
+    private static byte type(Object value) {
+        if (value == null) {
+            return NULL;
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? TRUE : FALSE;
+        } else if (value instanceof String) {
+            return hasLoneSurrogates((String) value) ? OTHER : STRING;
+        } else if (value instanceof Long) {
+            return LONG;
+        } else if (value instanceof Double) {
+            return DOUBLE;
+        } else if (value.getClass() == DateTime.class) {
+            return hasLoneSurrogates(((DateTime) value).value) ? OTHER : DATE_TIME;
+        } else if (value.getClass() == Duration.class) {
+            return hasLoneSurrogates(((Duration) value).value) ? OTHER : DURATION;
+        }
+        return OTHER;
+    }
+
+    //the type byte and the bytes of the value, other being the position of a value of another type in others
+    private static byte[] encode(byte type, Object value, Integer other) {
+        switch (type) {
+            case STRING:
+                return withType(type, ((String) value).getBytes(StandardCharsets.UTF_8));
+            case LONG:
+                return withType(type, toBytes((Long) value));
+            case DOUBLE:
+                return withType(type, toBytes(Double.doubleToLongBits((Double) value)));
+            case DATE_TIME:
+                return withType(type, ((DateTime) value).value.getBytes(StandardCharsets.UTF_8));
+            case DURATION:
+                return withType(type, ((Duration) value).value.getBytes(StandardCharsets.UTF_8));
+            case OTHER:
+                return withType(type, toBytes(other));
+            default:
+                return new byte[]{type};
+        }
+    }
+
+    //the hash of what encode gives, without making it
+    private static int hash(byte type, Object value, Integer other) {
+        int hash = hash(0x811c9dc5, type);
+        switch (type) {
+            case STRING:
+                return hash(hash, (String) value);
+            case LONG:
+                return hash(hash, (long) (Long) value);
+            case DOUBLE:
+                return hash(hash, Double.doubleToLongBits((Double) value));
+            case DATE_TIME:
+                return hash(hash, ((DateTime) value).value);
+            case DURATION:
+                return hash(hash, ((Duration) value).value);
+            case OTHER:
+                return hash(hash, (long) other);
+            default:
+                return hash;
+        }
+    }
+
+    //UTF-8 would not keep a surrogate that is not half of a pair, so strings with one are kept as other values
+    private static boolean hasLoneSurrogates(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] withType(byte type, byte[] value) {
+        byte[] result = new byte[value.length + 1];
+        result[0] = type;
+        System.arraycopy(value, 0, result, 1, value.length);
+        return result;
+    }
+
+    private static byte[] toBytes(long value) {
+        byte[] result = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            result[i] = (byte) value;
+            value >>>= 8;
+        }
+        return result;
+    }
+
+    private long getLong(int start) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (bytes[start + i] & 0xff);
+        }
+        return value;
+    }
+
+    //FNV-1a
+    private static int hash(byte[] bytes, int from, int to) {
+        int hash = 0x811c9dc5;
+        for (int i = from; i < to; i++) {
+            hash = hash(hash, bytes[i]);
+        }
+        return hash;
+    }
+
+    private static int hash(int hash, int b) {
+        return (hash ^ (b & 0xff)) * 0x01000193;
+    }
+
+    //the hash continued over the 8 bytes toBytes gives
+    private static int hash(int hash, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            hash = hash(hash, (int) (value >>> shift));
+        }
+        return hash;
+    }
+
+    //the hash continued over the UTF-8 bytes of text with no lone surrogate
+    private static int hash(int hash, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                hash = hash(hash, c);
+            } else if (c < 0x800) {
+                hash = hash(hash, 0xc0 | c >> 6);
+                hash = hash(hash, 0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c)) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                hash = hash(hash, 0xf0 | cp >> 18);
+                hash = hash(hash, 0x80 | cp >> 12 & 0x3f);
+                hash = hash(hash, 0x80 | cp >> 6 & 0x3f);
+                hash = hash(hash, 0x80 | cp & 0x3f);
+            } else {
+                hash = hash(hash, 0xe0 | c >> 12);
+                hash = hash(hash, 0x80 | c >> 6 & 0x3f);
+                hash = hash(hash, 0x80 | c & 0x3f);
+            }
+        }
+        return hash;
+    }
+
+    private boolean equals(int i, byte[] key) {
+        int start = starts[i];
+        int end = i + 1 < size ? starts[i + 1] : used;
+        if (end - start != key.length) {
+            return false;
+        }
+        for (int j = 0; j < key.length; j++) {
+            if (bytes[start + j] != key[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        fill();
+    }
+
+    private void fill() {
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hashes[id] & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = id + 1;
+        }
+    }
+
+    //the bits of the hash are the first of k, the others stepping by a second hash derived from it
+    private void addToBloom(int hash) {
+        long bits = (long) bloom.length * 64;
+        int step = (hash >>> 16 | hash << 16) * 0x9e3779b1 | 1;
+        for (int k = 0; k < bloomHashes; k++) {
+            long bit = ((hash + (long) k * step) & 0xffffffffL) % bits;
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(int hash) {
+        long bits = (long) bloom.length * 64;
+        int step = (hash >>> 16 | hash << 16) * 0x9e3779b1 | 1;
+        for (int k = 0; k < bloomHashes; k++) {
+            long bit = ((hash + (long) k * step) & 0xffffffffL) % bits;
+            if ((bloom[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -2,12 +2,31 @@ package org.treeml;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.IntStream;
 
 import static org.junit.Assert.*;
 
@@ -127,6 +146,627 @@ public class Tests {
 
     }
 
+    @Test
+    public void testByteInput() throws Exception {
+        //noinspection ConstantConditions
+        for (File f : testDir().listFiles()) {
+            String expected = outcome(() -> new Parser2().parse(new FileReader(f)));
+            assertEquals(f.getName(), expected, outcome(() -> new Parser2().parse(f.toPath())));
+            assertEquals(f.getName(), expected, outcome(() -> {
+                try (InputStream in = new FileInputStream(f)) {
+                    return new Parser2().parse(in);
+                }
+            }));
+        }
+        File file = File.createTempFile("utf8", ".tree");
+        try {
+            Files.write(file.toPath(), "name : \"caf\u00e9 \\\"\u65e5\u672c\\\"\"\n".getBytes(StandardCharsets.UTF_8));
+            Node doc = new Parser2().parse(file.toPath());
+            assertEquals("caf\u00e9 \"\u65e5\u672c\"", doc.children.get(0).value);
+            doc = new Parser2().parse(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+            assertEquals("caf\u00e9 \"\u65e5\u672c\"", doc.children.get(0).value);
+            //an error shows the character, not the first of its bytes
+            String illegal = "\u00e9a : 1\n";
+            Files.write(file.toPath(), illegal.getBytes(StandardCharsets.UTF_8));
+            String expected = "Illegal start of a name: \u00e9 {line 1, position 1}";
+            assertEquals(expected, outcome(() -> new Parser2().parse(new StringReader(illegal))));
+            assertEquals(expected, outcome(() -> new Parser2().parse(file.toPath())));
+            assertEquals(expected, outcome(() -> new Parser2().parse(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))));
+            assertEquals(expected, outcome(() -> {
+                PushParser push = new PushParser(new Parser2());
+                push.feed(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+                return push.finish();
+            }));
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testWindowBoundary() throws Exception {
+        String value = "caf\u00e9 \u65e5\u672c \ud83d\ude00 " + String.join(" ", Collections.nCopies(20, "long text"));
+        String region = "a_rather_long_node_name : \"" + value + "\"\n" +
+                "next : 12345.5\n";
+        int regionBytes = region.getBytes(StandardCharsets.UTF_8).length;
+        File file = File.createTempFile("window", ".tree");
+        try {
+            //the region starts before the end of the first window, by every offset from its length to 0
+            for (int shift = 0; shift <= regionBytes; shift++) {
+                int padding = Parser2.WINDOW - regionBytes + shift - "pad : \"\"\n".length();
+                String document = "pad : \"" + String.join("", Collections.nCopies(padding, "x")) + "\"\n" +
+                        region + "last : true\n";
+                byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+                Files.write(file.toPath(), bytes);
+                String expected = outcome(() -> new Parser2().parse(new StringReader(document)));
+                assertTrue(expected, expected.contains("a_rather_long_node_name=" + value + "@2{}next=12345.5@3{}last=true@4{}"));
+                assertEquals("shift " + shift, expected, outcome(() -> new Parser2().parse(new ByteArrayInputStream(bytes))));
+                assertEquals("shift " + shift, expected, outcome(() -> new Parser2().parse(file.toPath())));
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static String outcome(Callable<Node> parse) {
+        try {
+            StringBuilder sb = new StringBuilder();
+            dump(parse.call(), sb);
+            return sb.toString();
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
+    private static void dump(Node node, StringBuilder sb) {
+        sb.append(node.name).append('=').append(show(node.value)).append('@').append(node.line).append('{');
+        for (Node child : node.children) {
+            dump(child, sb);
+        }
+        sb.append('}');
+    }
+
+    private static Object show(Object value) {
+        if (value instanceof DateTime) {
+            return "@" + ((DateTime) value).value;
+        } else if (value instanceof Duration) {
+            return "@" + ((Duration) value).value;
+        } else if (value instanceof List<?>) {
+            List<Object> shown = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                shown.add(show(item));
+            }
+            return shown;
+        }
+        return value;
+    }
+
+    @Test
+    public void testListenerEvents() throws IOException {
+        assertEquals(Listener.TAG, new TagListener().events());
+        assertEquals(0, new TimerListener().events());
+        final StringBuilder names = new StringBuilder();
+        Listener namesOnly = new Listener() {
+            @Override
+            public int events() {
+                return NODE_NAME;
+            }
+
+            @Override
+            public void onNodeName(String name, int indent, int index, int lineNumber, int lineIndex, Parser2.Group name1) {
+                names.append(name).append(' ');
+            }
+
+            @Override
+            public void onCharacter(char c, int indent, int index, int line, int lineIndex, Parser2.Group currentGroup) {
+                fail("not in the event mask");
+            }
+        };
+        Parser2 parser = new Parser2(new Parser2.Options(false, false, true, false), Collections.singletonList(namesOnly));
+        parser.parse(new StringReader("a : 1\n\tb : 2\nc : 3\n"));
+        assertEquals("a b c ", names.toString());
+    }
+
+    @Test
+    public void testPushParser() throws Exception {
+        //noinspection ConstantConditions
+        for (File f : testDir().listFiles()) {
+            String expected = outcome(() -> new Parser2().parse(new FileReader(f)));
+            byte[] utf8 = Files.readAllBytes(f.toPath());
+            char[] text = new String(utf8, StandardCharsets.UTF_8).toCharArray();
+            for (int chunk : new int[]{1, 7, 4096}) {
+                assertEquals(f.getName(), expected, outcome(() -> {
+                    PushParser parser = new PushParser(new Parser2());
+                    for (int i = 0; i < text.length; i += chunk) {
+                        parser.feed(CharBuffer.wrap(text, i, Math.min(chunk, text.length - i)));
+                    }
+                    return parser.finish();
+                }));
+                assertEquals(f.getName(), expected, outcome(() -> {
+                    PushParser parser = new PushParser(new Parser2());
+                    for (int i = 0; i < utf8.length; i += chunk) {
+                        parser.feed(ByteBuffer.wrap(utf8, i, Math.min(chunk, utf8.length - i)));
+                    }
+                    return parser.finish();
+                }));
+            }
+        }
+    }
+
+    @Test
+    public void testReader() throws Exception {
+        //noinspection ConstantConditions
+        for (File f : testDir().listFiles()) {
+            String expected = outcome(() -> new Parser2().parse(new FileReader(f)));
+            assertEquals(f.getName(), expected, outcome(() -> read(new TreeMLReader(new FileReader(f)))));
+            assertEquals(f.getName(), expected, outcome(() -> read(new TreeMLReader(new FileInputStream(f)))));
+        }
+        TreeMLReader reader = new TreeMLReader(new StringReader("a : 1, 2\n\tb : x\n\t\tc : 3\n\td : 4\ne : 5\n"));
+        assertEquals(TreeMLReader.Event.START_NODE, reader.next());
+        assertTrue(reader.nameEquals("a"));
+        assertEquals(TreeMLReader.Event.LIST_START, reader.next());
+        assertEquals(TreeMLReader.Event.VALUE, reader.next());
+        assertEquals(1L, reader.getLong());
+        reader.skipChildren();
+        assertEquals(TreeMLReader.Event.END_NODE, reader.next());
+        assertEquals(0, reader.getDepth());
+        assertEquals(TreeMLReader.Event.START_NODE, reader.next());
+        assertEquals("e", reader.getName());
+        assertEquals(5, reader.getLine());
+    }
+
+    //builds the document from reader events, as DomListener does from listener events
+    private static Node read(TreeMLReader reader) throws IOException {
+        try (TreeMLReader in = reader) {
+            RootNode root = new RootNode();
+            List<Node> path = new ArrayList<>();
+            path.add(root);
+            TreeMLReader.Event event;
+            while ((event = in.next()) != TreeMLReader.Event.END_DOCUMENT) {
+                Node node = path.get(path.size() - 1);
+                if (event == TreeMLReader.Event.TAG) {
+                    root.tags.add(in.getText());
+                } else if (event == TreeMLReader.Event.START_NODE) {
+                    Node child = new Node(in.getName(), null);
+                    child.line = in.getLine();
+                    node.children.add(child);
+                    path.add(child);
+                } else if (event == TreeMLReader.Event.LIST_START) {
+                    node.value = new ArrayList<>();
+                } else if (event == TreeMLReader.Event.VALUE && node.value instanceof List<?>) {
+                    //noinspection unchecked
+                    ((List<Object>) node.value).add(in.getValue());
+                } else if (event == TreeMLReader.Event.VALUE) {
+                    node.value = in.getValue();
+                } else {
+                    assertEquals(path.size() - 2, in.getDepth());
+                    path.remove(path.size() - 1);
+                }
+            }
+            return root;
+        }
+    }
+
+    @Test
+    public void testTapeDocument() throws Exception {
+        //noinspection ConstantConditions
+        for (File f : testDir().listFiles()) {
+            String expected = outcome(() -> new Parser2().parse(new FileReader(f)));
+            assertEquals(f.getName(), expected, outcome(() -> TapeDocument.parse(new FileReader(f)).toNode()));
+            assertEquals(f.getName(), expected, outcome(() -> {
+                try (InputStream in = new FileInputStream(f)) {
+                    return TapeDocument.parse(in).toNode();
+                }
+            }));
+        }
+        TapeDocument document = TapeDocument.parse(new StringReader("a : 1, x\n\tb : 2.5\nc : true\n"));
+        TapeDocument.Cursor cursor = document.cursor();
+        assertTrue(cursor.toFirstChild());
+        assertTrue(cursor.nameEquals("a"));
+        assertEquals(Arrays.asList(1L, "x"), cursor.getValue());
+        assertTrue(cursor.toFirstChild());
+        assertEquals(2.5, cursor.getDouble(), 0);
+        assertFalse(cursor.toNextSibling());
+        assertTrue(cursor.toParent());
+        assertTrue(cursor.toNextSibling());
+        assertTrue(cursor.getBoolean());
+        assertEquals(3, cursor.getLine());
+    }
+
+    @Test
+    public void testDomLinks() throws IOException {
+        Node root = new Parser2().parse(new StringReader("a : 1\n\tb : 2\n\t\tc : 3\n\td : 4\ne : 5\n"));
+        Node a = root.children.get(0), b = a.children.get(0), c = b.children.get(0), d = a.children.get(1), e = root.children.get(1);
+        assertSame(root, a.parent);
+        assertSame(a, b.parent);
+        assertSame(b, c.parent);
+        assertSame(a, d.parent);
+        assertSame(d, b.next);
+        assertSame(b, d.previous);
+        assertSame(e, a.next);
+        assertNull(b.previous);
+        assertNull(c.next);
+    }
+
+    @Test
+    public void testSymbolTable() throws IOException {
+        Parser2 parser = new Parser2();
+        Node first = parser.parse(new StringReader("a : x\n\ta : y\n"));
+        Node second = parser.parse(new StringReader("a : \"x\"\n"));
+        Node a = first.children.get(0);
+        assertSame(a.name, a.children.get(0).name);
+        assertSame(a.name, second.children.get(0).name);
+        assertSame(a.value, parser.symbols.intern("x"));
+        assertNotSame(a.value, second.children.get(0).value);
+        assertEquals("x", second.children.get(0).value);
+
+        SymbolTable symbols = new SymbolTable(2);
+        assertEquals(0, symbols.id("ab".toCharArray(), 0, 2));
+        assertEquals(0, symbols.id("xaby".toCharArray(), 1, 2));
+        assertEquals(1, symbols.id("b".toCharArray(), 0, 1));
+        assertEquals(SymbolTable.NONE, symbols.id("c".toCharArray(), 0, 1));
+        assertEquals("c", symbols.intern("c"));
+        assertArrayEquals(new String[]{"ab", "b"}, symbols.symbols());
+    }
+
+    @Test
+    public void testPrimitiveValues() throws IOException {
+        Node root = new Parser2().parse(new StringReader("a : 1, 2, 3\nb : 1.5, 2.5\nc : 1, 2.5\nd : 4, x\ne : 7\nf : 0.5\ng : true\n"));
+        Node a = root.children.get(0), b = root.children.get(1), c = root.children.get(2), d = root.children.get(3);
+        assertTrue(a.value instanceof LongList);
+        assertArrayEquals(new long[]{1, 2, 3}, ((LongList) a.value).toLongArray());
+        assertEquals(Arrays.asList(1L, 2L, 3L), a.value);
+        assertTrue(b.value instanceof DoubleList);
+        assertEquals(2.5, ((DoubleList) b.value).getDouble(1), 0);
+        assertEquals(Arrays.asList(1L, 2.5), c.value);
+        assertFalse(c.value instanceof LongList);
+        assertEquals(Arrays.asList(4L, "x"), d.value);
+        assertEquals(7, root.children.get(4).getLong());
+        assertEquals(0.5, root.children.get(5).getDouble(), 0);
+        assertTrue(root.children.get(6).getBoolean());
+        assertEquals(3L, Expression.eval(root, "a(listSize)"));
+        assertEquals(2L, Expression.eval(root, "a(1)"));
+        assertEquals("a", Expression.eval(root, "*[:2](name)"));
+        assertEquals(a.value, TapeDocument.parse(new StringReader("a : 1, 2, 3\n")).toNode().children.get(0).value);
+    }
+
+    @Test
+    public void testLazyValues() throws Exception {
+        //noinspection ConstantConditions
+        for (File f : testDir().listFiles()) {
+            String expected = outcome(() -> new Parser2().parse(new FileReader(f)));
+            String text = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+            assertEquals(f.getName(), expected, outcome(() -> decodeAll(new Parser2().parseLazy(text))));
+        }
+        Node root = new Parser2().parseLazy("a : \"x\\\"y\"\nb : @2016-01-01\nc : 1, 2\nd : 1_000\n");
+        Node b = root.children.get(1);
+        assertNull(b.value);
+        assertEquals("2016-01-01", ((DateTime) b.getValue()).value);
+        assertSame(b.value, b.getValue());
+        assertEquals("x\"y", root.children.get(0).value);
+        assertEquals(Arrays.asList(1L, 2L), root.children.get(2).getValue());
+        assertEquals(1000, root.children.get(3).getLong());
+        //a later value replaces the first, which is then not decoded over it
+        for (String document : new String[]{"a : 1 \\\n 2\n", "{\n a : 1 \\\n }\n", "a : \"s\" \\\n @PT1H\n"}) {
+            String expected = outcome(() -> new Parser2().parse(new StringReader(document)));
+            assertEquals(document, expected, outcome(() -> decodeAll(new Parser2().parseLazy(document))));
+        }
+        Parser2 streaming = new Parser2(new Parser2.Options(false, false, true, false), new ArrayList<>());
+        try {
+            streaming.parseLazy("a : 1\n");
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Cannot parse lazily in streaming mode.", e.getMessage());
+        }
+    }
+
+    private static Node decodeAll(Node node) {
+        node.getValue();
+        node.children.forEach(Tests::decodeAll);
+        return node;
+    }
+
+    @Test
+    public void testOnDemand() throws Exception {
+        //noinspection ConstantConditions
+        for (File f : testDir().listFiles()) {
+            String expected = outcome(() -> new Parser2().parse(new FileReader(f)));
+            String text = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+            assertEquals(f.getName(), expected, outcome(() -> new Parser2().parseOnDemand(text)));
+        }
+        RootNode root = new Parser2().parseOnDemand("#t\n{\n a : 1 {\n  b : 2\n }\n c : 3\n}\n");
+        assertEquals(Collections.singletonList("t"), root.tags);
+        assertEquals(2, root.children.size());
+        Node c = root.children.get(1);
+        assertEquals(6, c.line);
+        assertNull(c.previous);
+        Node a = root.children.get(0);
+        assertSame(c, a.next);
+        assertSame(root, a.parent);
+        assertEquals(2L, a.children.get(0).value);
+    }
+
+    @Test
+    public void testCompiledExpression() throws IOException {
+        Node root = new Parser2().parse(new StringReader("a : 1\n\tb : x, y\n\tb : z\n"));
+        CompiledExpression compiled = Expression.compile("a.b[1]()");
+        assertSame(compiled, Expression.compile("a.b[1]()"));
+        assertEquals("z", compiled.eval(root));
+        assertEquals("y", Expression.compile("a.b[:'y'](1)").eval(root));
+        assertEquals(2L, Expression.compile("a.*(listSize)").eval(root));
+        //a step that does not parse only fails once it is reached
+        assertNull(Expression.eval(root, "c.b[x]"));
+        try {
+            Expression.eval(root, "a.b[x]");
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals("Syntax error: a.b[x]", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testChildLookup() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            sb.append(i % 2 == 0 ? "even" : "odd").append(" : ").append(i).append(", x").append(i % 3).append('\n');
+        }
+        for (Node root : new Node[]{new Parser2().parse(new StringReader(sb.toString())), new Parser2().parseOnDemand(sb)}) {
+            assertEquals(0L, ((List<?>) root.child("even").getValue()).get(0));
+            assertEquals(7L, ((List<?>) root.child("odd", 3).getValue()).get(0));
+            assertNull(root.child("odd", 20));
+            assertNull(root.child("none"));
+            assertEquals(20, root.children("even").size());
+            assertEquals(5L, ((List<?>) root.childWithValue("odd", "x2").getValue()).get(0));
+            assertEquals(3L, Expression.eval(root, "odd[:'x0'](0)"));
+            assertNull(root.childWithValue("odd", 4L));
+        }
+        //the index follows the children as they are added
+        Node node = new Node("n", null);
+        for (int i = 0; i < 20; i++) {
+            node.addChild(new Node("c", (long) i));
+            assertEquals((long) i, node.child("c", i).getValue());
+        }
+        assertNull(new Node("n", null).child("c"));
+        //and as they are changed in place
+        node.children.set(3, new Node("d", 3L));
+        assertEquals(4L, node.child("c", 3).getValue());
+        assertEquals(3L, node.child("d").getValue());
+        node.children.add(node.children.remove(0));
+        assertEquals(1L, node.child("c").getValue());
+        assertEquals(0L, node.child("c", 18).getValue());
+        node.child("c", 1).name = "e";
+        assertEquals(4L, node.child("c", 1).getValue());
+        assertEquals(18, node.children("c").size());
+        assertEquals(4L, node.childWithValue("c", 4L).getValue());
+        node.child("c", 1).value = 40L;
+        assertNull(node.childWithValue("c", 4L));
+        assertEquals(40L, node.childWithValue("c", 40L).getValue());
+        Node renamed = node.child("c", 2);
+        renamed.name = "f";
+        assertNull(node.childWithValue("c", renamed.getValue()));
+        assertSame(renamed, node.child("f"));
+        //a child renamed to the name, or given the value, is found once the node is reindexed
+        Node wide = new Node("w", null);
+        for (int i = 0; i < 20; i++) {
+            wide.addChild(new Node(i == 0 ? "b" : "c", (long) i));
+        }
+        assertEquals(1L, wide.child("c").getValue());
+        assertEquals(5L, wide.childWithValue("c", 5L).getValue());
+        wide.children.get(0).name = "c";
+        wide.children.get(1).value = 5L;
+        wide.reindex();
+        assertSame(wide.children.get(0), wide.child("c"));
+        assertSame(wide.children.get(1), wide.childWithValue("c", 5L));
+        assertEquals(20, wide.children("c").size());
+        Node onDemand = new Parser2().parseOnDemand(sb);
+        onDemand.child("even", 2).name = "odd";
+        assertEquals(6L, ((List<?>) onDemand.child("even", 2).getValue()).get(0));
+    }
+
+    @Test
+    public void testDocumentGroupCache() throws IOException {
+        File source = new File(testDir(), "dependency-source.tree");
+        try {
+            Files.write(source.toPath(), "item:\n\tid: a\nitem:\n\tid: b\n".getBytes(StandardCharsets.UTF_8));
+            Dependency.DocumentGroup group = new Dependency.DocumentGroup();
+            group.documents.add("/test/career.tree");
+            group.documents.add("/test/dependency-source.tree");
+            group.path = Arrays.asList("item", "id", "nodeValue");
+            Parser2 parser = new Parser2();
+            Set<Object> values = group.eval(true, parser);
+            assertEquals(new HashSet<>(Arrays.asList("a", "b")), values);
+            assertSame(values, group.eval(true, parser));
+            //a changed source is read again
+            Files.write(source.toPath(), "item:\n\tid: a\nitem:\n\tid: a\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(source.setLastModified(source.lastModified() + 2000));
+            try {
+                group.eval(true, parser);
+                fail();
+            } catch (RuntimeException e) {
+                assertEquals("L0002: Node value not unique: a at line 4", e.getMessage());
+            }
+            assertEquals(Collections.singleton("a"), group.eval(false, parser));
+            //as is a group whose documents change
+            group.documents.remove("/test/dependency-source.tree");
+            assertEquals(Collections.emptySet(), group.eval(false, parser));
+            group.documents.add("/test/dependency-source.tree");
+            assertEquals(Collections.singleton("a"), group.eval(false, parser));
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            source.delete();
+        }
+    }
+
+    @Test
+    public void testValueSet() throws IOException {
+        List<Object> values = Arrays.asList(null, true, false, "a", "caf\u00e9", "\ud800", 1L, 1.0, -0.0, "1",
+                new DateTime("2016-06-26"), new Duration("P1D"), Arrays.asList(1L, 2L));
+        for (ValueSet set : new ValueSet[]{new ValueSet(), new ValueSet(4, 0.01)}) {
+            for (Object value : values) {
+                assertTrue(set.add(value));
+                assertFalse(set.add(value));
+            }
+            for (int i = 0; i < 1000; i++) {
+                set.add("id" + i);
+            }
+            assertEquals(values.size() + 1000, set.size());
+            assertEquals(new HashSet<>(set), set);
+            for (int i = 0; i < values.size(); i++) {
+                assertEquals(values.get(i), set.get(i));
+                assertTrue(set.contains(values.get(i)));
+            }
+            assertTrue(set.contains(new DateTime("2016-06-26")));
+            assertTrue(set.contains("id999"));
+            assertFalse(set.contains("id1000"));
+            assertFalse(set.contains(0.0));
+            assertFalse(set.contains(2L));
+            assertFalse(set.contains(Arrays.asList(2L)));
+        }
+        //a surrogate pair is text like any other, and only a lone surrogate stops the set being written
+        ValueSet text = new ValueSet();
+        text.add("\ud83d\ude00");
+        text.add("a\ud83d\ude00b");
+        assertTrue(text.writable());
+        assertEquals("a\ud83d\ude00b", text.get(1));
+        //read hashes the bytes written, which lookups hash without encoding the value
+        List<Object> written = Arrays.asList(null, true, "caf\u00e9", "\u65e5\u672c", "\ud83d\ude00", -1L, 0.5,
+                new DateTime("2016-06-26"), new Duration("P1D"));
+        ValueSet out = new ValueSet();
+        out.addAll(written);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        out.write(new DataOutputStream(bytes));
+        ValueSet in = ValueSet.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(written.size(), in.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(i, in.indexOf(written.get(i)));
+        }
+        text.add("\ude00\ud83d");
+        assertFalse(text.writable());
+        Dependency.DocumentGroup group = new Dependency.DocumentGroup();
+        group.documents.add("/test/career.tree");
+        group.path = Arrays.asList("career", "skill", "id", "nodeValue");
+        Set<Object> expected = group.eval(true, new Parser2());
+        group.compact = true;
+        group.falsePositiveRate = 0.01;
+        assertEquals(expected, group.eval(true, new Parser2()));
+        group.path = Arrays.asList("career", "skill", "level", "nodeValue");
+        try {
+            group.eval(true, new Parser2());
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals("L0002: Node value not unique: 2 at line 76", e.getMessage());
+        }
+        //a compact group looks values up in each document's set, and gives a value in two of them once
+        group.path = Arrays.asList("career", "skill", "id", "nodeValue");
+        group.documents.add("/test/career.tree");
+        Set<Object> twice = group.eval(false, new Parser2());
+        assertEquals(expected, twice);
+        assertEquals(expected.size(), new ArrayList<>(twice).size());
+        group.compact = false;
+        assertEquals(expected, group.eval(false, new Parser2()));
+    }
+
+    @Test
+    public void testReferenceRules() throws IOException {
+        Dependency.DocumentGroup skills = new Dependency.DocumentGroup();
+        skills.documents.add("/test/career.tree");
+        skills.path = Arrays.asList("career", "skill", "id", "nodeValue");
+        Dependency.DocumentGroup careers = new Dependency.DocumentGroup();
+        careers.documents.add("/test/career.tree");
+        careers.path = Arrays.asList("career", "id", "nodeValue");
+        List<String> exitCareers = Arrays.asList("career", "exit_career", "id", "nodeValue");
+        List<Dependency.Rule> rules = Arrays.asList(
+                new Dependency.Rule("exit-skill", exitCareers, skills),
+                new Dependency.Rule("exit-career", exitCareers, careers),
+                new Dependency.Rule("names", Arrays.asList("career", "token", "level", "nodeName"), skills));
+        Dependency dependency = new Dependency();
+        List<Dependency.BrokenReference> broken = dependency.checkReferences("/test/career.tree", rules);
+        Map<Integer, String> single = dependency.checkReferences("/test/career.tree", exitCareers, skills);
+        List<String> exitSkill = new ArrayList<>();
+        for (Dependency.BrokenReference reference : broken) {
+            if (reference.ruleId.equals("exit-skill")) {
+                exitSkill.add(reference.line + ":" + reference.message);
+            }
+        }
+        List<String> expected = new ArrayList<>();
+        single.forEach((line, message) -> expected.add(line + ":" + message));
+        assertEquals(expected, exitSkill);
+        //both exit rules break on every exit career line, and every level is a name not in the source
+        assertEquals(2 * single.size(), broken.stream().filter(r -> r.ruleId.startsWith("exit")).count());
+        assertTrue(broken.stream().anyMatch(r -> r.ruleId.equals("names") && r.message.equals("L0003: Node name not in source: level")));
+    }
+
+    @Test
+    public void testReferenceIndex() throws IOException {
+        File source = new File(testDir(), "index-source.tree");
+        File referrer = new File(testDir(), "index-referrer.tree");
+        File groupIndex = File.createTempFile("group", ".index");
+        File resultIndex = File.createTempFile("results", ".index");
+        try {
+            assertTrue(groupIndex.delete() && resultIndex.delete());
+            Files.write(source.toPath(), "item:\n\tid: a\nitem:\n\tid: b\n".getBytes(StandardCharsets.UTF_8));
+            Files.write(referrer.toPath(), "use: a\nuse: c\n".getBytes(StandardCharsets.UTF_8));
+            int[] parses = {0};
+            Parser2 parser = new Parser2() {
+                @Override
+                protected Node doParse(Reader input, Schema schema) throws IOException {
+                    parses[0]++;
+                    return super.doParse(input, schema);
+                }
+            };
+            //each run as a new process would, with nothing but the index files kept
+            for (int run = 0; run < 3; run++) {
+                if (run == 2) {
+                    Files.write(referrer.toPath(), "use: b\nuse: c\nuse: d\n".getBytes(StandardCharsets.UTF_8));
+                    assertTrue(referrer.setLastModified(referrer.lastModified() + 2000));
+                }
+                parses[0] = 0;
+                Dependency.DocumentGroup group = new Dependency.DocumentGroup();
+                group.documents.add("/test/index-source.tree");
+                group.path = Arrays.asList("item", "id", "nodeValue");
+                group.index = groupIndex;
+                List<Dependency.Rule> rules = Collections.singletonList(new Dependency.Rule("use", Arrays.asList("use", "nodeValue"), group));
+                List<Dependency.BrokenReference> broken = new Dependency(parser)
+                        .checkReferences(Collections.singletonList("/test/index-referrer.tree"), rules, resultIndex)
+                        .get("/test/index-referrer.tree");
+                List<String> shown = new ArrayList<>();
+                broken.forEach(reference -> shown.add(reference.toString()));
+                if (run < 2) {
+                    assertEquals(Collections.singletonList("use 2 : L0004: Node value not in source: c"), shown);
+                    assertEquals(run == 0 ? 2 : 0, parses[0]);
+                } else {
+                    assertEquals(Arrays.asList("use 2 : L0004: Node value not in source: c", "use 3 : L0004: Node value not in source: d"), shown);
+                    assertEquals(1, parses[0]);
+                }
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            source.delete();
+            //noinspection ResultOfMethodCallIgnored
+            referrer.delete();
+            //noinspection ResultOfMethodCallIgnored
+            groupIndex.delete();
+            //noinspection ResultOfMethodCallIgnored
+            resultIndex.delete();
+        }
+    }
+
+    @Test
+    public void testQuerySet() throws IOException {
+        Node root = new Parser2().parse(new StringReader("a : 1\n\tb : x, y\n\tb : z\n\tc : 2\na : 3\n"));
+        QuerySet queries = new QuerySet("a.b[1]()", "a.b", "a.*(listSize)", "a[1]", "a.c(name)", "'literal'", "a.d", "a.b[:'y'](1)");
+        assertEquals(Arrays.asList("z", Arrays.asList("x", "y"), 2L, 3L, "c", "literal", null, "y"), Arrays.asList(queries.eval(root)));
+        assertEquals(3L, queries.evalToMap(root).get("a[1]"));
+        //the error is the one the first failing expression would throw on its own
+        try {
+            new QuerySet("a.b", "a.c(1)", "a.b[x]").eval(root);
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals("Syntax error: a.c(1)", e.getMessage());
+        }
+    }
+
     @Test
     public void testSchema() {
         File schemaDir = new File(testDir().getParent(), "schema");
@@ -147,6 +787,34 @@ public class Tests {
             assertTrue(ex.getErrors().contains("Validation error V006: [token:a Token] token ID is not a valid token {line: 7}"));
             assertTrue(ex.getErrors().contains("Validation error V008: [field2:aToken] tokenidref does not refer to a preceding tokenid {line: 13}"));
         }
+        //token IDs are per validation, so one schema can validate the same document again, and concurrently
+        Schema types = parser.parseSchema(new File(schemaDir, "types.schema"));
+        IntStream.range(0, 8).parallel().forEach(i -> {
+            try {
+                parser.parse(new File(schemaDir, "types-pass-01.tree").toPath(), types);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        for (Parser2.Options options : new Parser2.Options[]{
+                new Parser2.Options(false, false, true, false),
+                new Parser2.Options(false, false, false, false, true)}) {
+            Parser2 other = new Parser2(options, Collections.emptyList());
+            other.parse(
+                    new File(testDir(), "career.tree"),
+                    new File(schemaDir, "career.schema"));
+            try {
+                other.parse(
+                        new File(schemaDir, "types-fail-01.tree"),
+                        new File(schemaDir, "types.schema"));
+                fail("types-fail-01.tree is invalid");
+            } catch (ValidationException e) {
+                assertEquals(Arrays.asList(
+                        "Validation error V006: [token:a Token] token ID is not a valid token {line: 7}",
+                        "Validation error V008: [field2:aToken] tokenidref does not refer to a preceding tokenid {line: 13}"),
+                        e.getErrors());
+            }
+        }
     }
 
 }